@@ -0,0 +1,167 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+/**
+ * Measure how long re-encrypting a batch of items takes through a
+ * {@link CryptoWorkQueue} with 1, 2, 4 and 8 worker threads, the way
+ * {@link PasswordChangeService} re-keys the database.  The times are
+ * logged so that {@link CryptoWorkQueue#defaultWorkerCount()} can be
+ * checked against the devices the app runs on.
+ */
+public class CryptoWorkQueueBenchmark extends TestCase {
+
+    private static final String TAG = "CryptoWorkQueueBenchmark";
+
+    /** Worker counts to compare */
+    private static final int[] WORKER_COUNTS = { 1, 2, 4, 8 };
+
+    /** Number of items re-encrypted in each run */
+    private static final int ITEM_COUNT = 10000;
+
+    /** Number of times each worker count is timed */
+    private static final int REPEATS = 5;
+
+    private StringEncryption oldEncryptor;
+    private StringEncryption newEncryptor;
+
+    /** The items encrypted with the old password */
+    private byte[][] descriptions;
+    private byte[][] notes;
+
+    /** The items&rsquo; plain text, for checking the results */
+    private String[] plainDescriptions;
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+	oldEncryptor = new StringEncryption();
+	oldEncryptor.setPassword("old password".toCharArray());
+	oldEncryptor.addSalt();
+	newEncryptor = new StringEncryption();
+	newEncryptor.setPassword("new password".toCharArray());
+	newEncryptor.addSalt();
+	descriptions = new byte[ITEM_COUNT][];
+	notes = new byte[ITEM_COUNT][];
+	plainDescriptions = new String[ITEM_COUNT];
+	// This also derives both keys before any workers start
+	for (int i = 0; i < ITEM_COUNT; i++) {
+	    plainDescriptions[i] = "Benchmark item " + i;
+	    descriptions[i] = oldEncryptor.encrypt(plainDescriptions[i]);
+	    StringBuilder note = new StringBuilder();
+	    for (int j = 0; j < 8; j++)
+		note.append("Line ").append(j)
+		    .append(" of the note for item ").append(i).append('\n');
+	    notes[i] = oldEncryptor.encrypt(note.toString());
+	}
+	newEncryptor.encrypt(plainDescriptions[0]);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	oldEncryptor.forgetPassword();
+	newEncryptor.forgetPassword();
+	super.tearDown();
+    }
+
+    /**
+     * Re-encrypt every item through a work queue with the given
+     * number of workers, checking that the results come back in order.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    private long rekey(int workers) throws GeneralSecurityException {
+	long start = System.nanoTime();
+	CryptoWorkQueue<byte[][]> queue = new CryptoWorkQueue<byte[][]>(workers);
+	int taken = 0;
+	try {
+	    for (int i = 0; i < ITEM_COUNT; i++) {
+		final byte[] description = descriptions[i];
+		final byte[] note = notes[i];
+		boolean full = queue.add(new Callable<byte[][]>() {
+		    @Override
+		    public byte[][] call() throws GeneralSecurityException {
+			return new byte[][] {
+			    newEncryptor.encrypt(
+				    oldEncryptor.decryptBytes(description)),
+			    newEncryptor.encrypt(
+				    oldEncryptor.decryptBytes(note))
+			};
+		    }
+		});
+		if (full)
+		    checkResult(queue.take(), taken++);
+	    }
+	    while (!queue.isEmpty())
+		checkResult(queue.take(), taken++);
+	} finally {
+	    queue.shutdown();
+	}
+	long elapsed = System.nanoTime() - start;
+	assertEquals("Results taken", ITEM_COUNT, taken);
+	return elapsed;
+    }
+
+    /** Check that a result belongs to the expected item */
+    private void checkResult(byte[][] result, int index)
+	throws GeneralSecurityException {
+	// Only spot-check so that the main thread stays mostly idle
+	if (index % 100 == 0)
+	    assertEquals("Item " + index, plainDescriptions[index],
+		    newEncryptor.decrypt(result[0]));
+    }
+
+    public void testWorkerCounts() throws GeneralSecurityException {
+	// Warm up the JIT and the cipher pools
+	for (int w = 0; w < WORKER_COUNTS.length; w++)
+	    rekey(WORKER_COUNTS[w]);
+	long[][] times = new long[WORKER_COUNTS.length][REPEATS];
+	for (int r = 0; r < REPEATS; r++) {
+	    for (int w = 0; w < WORKER_COUNTS.length; w++)
+		times[w][r] = rekey(WORKER_COUNTS[w]);
+	}
+	int best = 0;
+	long[] medians = new long[WORKER_COUNTS.length];
+	for (int w = 0; w < WORKER_COUNTS.length; w++) {
+	    Arrays.sort(times[w]);
+	    medians[w] = times[w][REPEATS / 2];
+	    if (medians[w] < medians[best])
+		best = w;
+	}
+	for (int w = 0; w < WORKER_COUNTS.length; w++)
+	    Log.i(TAG, String.format("%d worker%s: %.1f ms for %d items"
+		    + " (%.2fx of 1 worker)", WORKER_COUNTS[w],
+		    (WORKER_COUNTS[w] == 1) ? "" : "s", medians[w] / 1.0e6,
+		    ITEM_COUNT, (double) medians[0] / medians[w]));
+	Log.i(TAG, String.format("Fastest: %d workers; %d processors;"
+		+ " default is %d", WORKER_COUNTS[best],
+		Runtime.getRuntime().availableProcessors(),
+		CryptoWorkQueue.defaultWorkerCount()));
+    }
+
+}
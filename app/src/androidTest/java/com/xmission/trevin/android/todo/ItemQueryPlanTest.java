@@ -0,0 +1,135 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.ProviderTestCase2;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import static com.xmission.trevin.android.todo.ToDoListActivity.*;
+
+/**
+ * Check that the filtered item list can be read in each of the
+ * {@link ToDoItem#USER_SORT_ORDERS} straight from an index,
+ * without SQLite sorting the rows in a temporary B-tree.
+ */
+public class ItemQueryPlanTest extends ProviderTestCase2<ToDoProvider> {
+
+    /** Columns of the list query which decide which tables are read */
+    private static final String[] LIST_COLUMNS = {
+	ToDoItem._ID, ToDoItem.CATEGORY_NAME
+    };
+
+    private SQLiteDatabase db;
+    private SharedPreferences prefs;
+
+    public ItemQueryPlanTest() {
+	super(ToDoProvider.class, ToDo.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+	// Let the provider create (or upgrade) the database first
+	Cursor c = getMockContentResolver().query(ToDoItem.CONTENT_URI,
+		new String[] { ToDoItem._ID }, null, null, null);
+	c.close();
+	db = getMockContext().openOrCreateDatabase(
+		ToDoProvider.DATABASE_NAME, 0, null);
+	prefs = getContext().getSharedPreferences(
+		"ItemQueryPlanTest", 0);
+	prefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	prefs.edit().clear().commit();
+	db.close();
+	super.tearDown();
+    }
+
+    /** @return whether SQLite is recent enough for expression indexes */
+    private boolean hasListIndexes() {
+	Cursor c = db.rawQuery("SELECT sqlite_version()", null);
+	try {
+	    c.moveToFirst();
+	    String[] version = c.getString(0).split("\\.");
+	    int major = Integer.parseInt(version[0]);
+	    int minor = Integer.parseInt(version[1]);
+	    return (major > 3) || ((major == 3) && (minor >= 9));
+	} finally {
+	    c.close();
+	}
+    }
+
+    /**
+     * Run EXPLAIN QUERY PLAN on the list query for every sort order
+     * with the current preferences and fail if any needs a sort.
+     */
+    private void assertSortOrdersUseIndexes() {
+	for (int i = 0; i < ToDoItem.USER_SORT_ORDERS.length; i++) {
+	    String sortOrder = ToDoItem.USER_SORT_ORDERS[i];
+	    List<String> whereArgs = new ArrayList<String>();
+	    String where = generateWhereClause(prefs, whereArgs);
+	    String sql = SQLiteQueryBuilder.buildQueryString(false,
+		    ToDoProvider.itemTables(LIST_COLUMNS, where, sortOrder),
+		    new String[] { "todo." + ToDoItem._ID,
+			"category.name AS " + ToDoItem.CATEGORY_NAME },
+		    where, null, null, sortOrder, null);
+	    Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql,
+		    whereArgs.toArray(new String[whereArgs.size()]));
+	    try {
+		int detail = c.getColumnIndexOrThrow("detail");
+		StringBuilder plan = new StringBuilder();
+		while (c.moveToNext())
+		    plan.append('\n').append(c.getString(detail));
+		assertFalse("Sort order " + i + " (" + sortOrder
+			+ ") for \"" + where + "\" is sorted by SQLite:"
+			+ plan, plan.indexOf("USE TEMP B-TREE") >= 0);
+	    } finally {
+		c.close();
+	    }
+	}
+    }
+
+    /** Unchecked, public items of all categories */
+    public void testDefaultFilter() {
+	if (!hasListIndexes())
+	    return;
+	assertSortOrdersUseIndexes();
+    }
+
+    /** Unchecked, public items of a single category */
+    public void testCategoryFilter() {
+	if (!hasListIndexes())
+	    return;
+	prefs.edit().putLong(TPREF_SELECTED_CATEGORY,
+		ToDo.ToDoCategory.UNFILED).commit();
+	assertSortOrdersUseIndexes();
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.util.Arrays;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.xmission.trevin.android.todo.ToDo.*;
+
+/**
+ * Compare the cost of the alarm refresh and password change queries
+ * on a 50,000 item database when they read only the to-do table
+ * against the same queries joined with the category table,
+ * which is how the provider used to run every item query.
+ */
+public class ItemTablesBenchmark extends ProviderTestCase2<ToDoProvider> {
+
+    private static final String TAG = "ItemTablesBenchmark";
+
+    /** Number of to-do items in the test database */
+    private static final int ITEM_COUNT = 50000;
+
+    /** Number of categories the items are spread across */
+    private static final int CATEGORY_COUNT = 16;
+
+    /** Number of times each query is timed */
+    private static final int REPEATS = 21;
+
+    /** The selection AlarmService uses for alarms which have gone off */
+    private static final String ALARM_WHERE =
+	ToDoItem.CHECKED + " = 0 AND "
+	+ ToDoItem.NEXT_ALARM_TIME + " IS NOT NULL AND "
+	+ ToDoItem.NEXT_ALARM_TIME + " <= CAST(? AS INTEGER)";
+
+    /** The selection PasswordChangeService uses for items to encrypt */
+    private static final String ENCRYPT_WHERE = ToDoItem.PRIVATE + " = 1";
+
+    private SQLiteDatabase db;
+
+    public ItemTablesBenchmark() {
+	super(ToDoProvider.class, ToDo.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+	Cursor c = getMockContentResolver().query(ToDoItem.CONTENT_URI,
+		new String[] { ToDoItem._ID }, null, null, null);
+	c.close();
+	db = getMockContext().openOrCreateDatabase(
+		ToDoProvider.DATABASE_NAME, 0, null);
+	long now = System.currentTimeMillis();
+	db.beginTransaction();
+	try {
+	    SQLiteStatement insert = db.compileStatement(
+		    "INSERT INTO " + ToDoProvider.CATEGORY_TABLE_NAME + " ("
+		    + ToDoCategory._ID + ", " + ToDoCategory.NAME
+		    + ") VALUES (?, ?)");
+	    for (int i = 1; i < CATEGORY_COUNT; i++) {
+		insert.bindLong(1, i);
+		insert.bindString(2, "Category " + i);
+		insert.executeInsert();
+	    }
+	    insert.close();
+	    insert = db.compileStatement(
+		    "INSERT INTO " + ToDoProvider.TODO_TABLE_NAME + " ("
+		    + ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE + ", "
+		    + ToDoItem.CREATE_TIME + ", " + ToDoItem.MOD_TIME + ", "
+		    + ToDoItem.CHECKED + ", " + ToDoItem.PRIORITY + ", "
+		    + ToDoItem.PRIVATE + ", " + ToDoItem.CATEGORY_ID + ", "
+		    + ToDoItem.DUE_TIME + ", "
+		    + ToDoItem.ALARM_DAYS_EARLIER + ", "
+		    + ToDoItem.ALARM_TIME + ", "
+		    + ToDoItem.NEXT_ALARM_TIME + ", "
+		    + ToDoItem.VISIBLE_TIME
+		    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)");
+	    for (int i = 0; i < ITEM_COUNT; i++) {
+		insert.clearBindings();
+		insert.bindString(1, "Benchmark item " + i);
+		insert.bindString(2, "Note for benchmark item " + i);
+		insert.bindLong(3, now - i * 60000L);
+		insert.bindLong(4, now - i * 60000L);
+		insert.bindLong(5, i % 3 == 0 ? 1 : 0);
+		insert.bindLong(6, 1 + i % 5);
+		insert.bindLong(7, i % 2);
+		insert.bindLong(8, i % CATEGORY_COUNT);
+		// One item in four has an alarm, half of them in the past
+		if (i % 4 == 0) {
+		    long due = now + (i - ITEM_COUNT / 2) * 60000L;
+		    insert.bindLong(9, due);
+		    insert.bindLong(10, 0);
+		    insert.bindLong(11, 8 * 3600000L);
+		    insert.bindLong(12, due);
+		}
+		insert.executeInsert();
+	    }
+	    insert.close();
+	    db.setTransactionSuccessful();
+	} finally {
+	    db.endTransaction();
+	}
+	db.execSQL("ANALYZE");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	db.close();
+	super.tearDown();
+    }
+
+    /**
+     * Build the SQL for a query of the given item columns
+     * from the given tables.
+     */
+    private static String buildQuery(String tables,
+	    String[] projection, String selection) {
+	String[] columns = new String[projection.length];
+	for (int i = 0; i < projection.length; i++)
+	    columns[i] = ToDoItem._ID.equals(projection[i])
+		? (ToDoProvider.TODO_TABLE_NAME + "." + ToDoItem._ID)
+		: projection[i];
+	return SQLiteQueryBuilder.buildQueryString(false, tables,
+		columns, selection, null, null, null, null);
+    }
+
+    /** Run a query, read every row, and return the time in nanoseconds */
+    private long timeQuery(String sql, String[] args) {
+	long start = System.nanoTime();
+	Cursor c = db.rawQuery(sql, args);
+	try {
+	    while (c.moveToNext())
+		c.getLong(0);
+	} finally {
+	    c.close();
+	}
+	return System.nanoTime() - start;
+    }
+
+    /** @return whether the query plan for a query reads a given table */
+    private boolean planReads(String sql, String[] args, String table) {
+	Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+	try {
+	    int detail = c.getColumnIndexOrThrow("detail");
+	    while (c.moveToNext()) {
+		if (c.getString(detail).matches(".*\\b" + table + "\\b.*"))
+		    return true;
+	    }
+	    return false;
+	} finally {
+	    c.close();
+	}
+    }
+
+    /**
+     * Time a query with and without the category join and log the
+     * median of each.  The runs are interleaved so that both queries
+     * see the same cache and CPU frequency conditions.
+     * <p>
+     * The difference is typically only a few percent, which is within
+     * the noise of a single device run, so the test checks that the
+     * provider's query does not read the category table rather than
+     * failing on the timings.
+     */
+    private void compareTables(String name, String[] projection,
+	    String selection, String[] args) {
+	String tables = ToDoProvider.itemTables(projection, selection, null);
+	assertEquals(name + " tables",
+		ToDoProvider.TODO_TABLE_NAME, tables);
+	String plainSql = buildQuery(tables, projection, selection);
+	String joinedSql = buildQuery(ToDoProvider.ITEM_CATEGORY_TABLES,
+		projection, selection);
+	assertFalse(name + " reads the category table",
+		planReads(plainSql, args, ToDoProvider.CATEGORY_TABLE_NAME));
+	assertTrue(name + " join does not read the category table",
+		planReads(joinedSql, args, ToDoProvider.CATEGORY_TABLE_NAME));
+
+	// Warm up the page cache before timing either query
+	timeQuery(joinedSql, args);
+	timeQuery(plainSql, args);
+	long[] plain = new long[REPEATS];
+	long[] joined = new long[REPEATS];
+	for (int i = 0; i < REPEATS; i++) {
+	    plain[i] = timeQuery(plainSql, args);
+	    joined[i] = timeQuery(joinedSql, args);
+	}
+	Arrays.sort(plain);
+	Arrays.sort(joined);
+	long plainMedian = plain[REPEATS / 2];
+	long joinedMedian = joined[REPEATS / 2];
+	Log.i(TAG, String.format("%s on %d items: todo %.2f ms,"
+		+ " todo JOIN category %.2f ms (%.1f%% saved)",
+		name, ITEM_COUNT, plainMedian / 1.0e6, joinedMedian / 1.0e6,
+		100.0 * (joinedMedian - plainMedian) / joinedMedian));
+    }
+
+    public void testAlarmRefresh() {
+	compareTables("Alarm refresh", AlarmService.ITEM_PROJECTION,
+		ALARM_WHERE, new String[] {
+		    Long.toString(System.currentTimeMillis()) });
+    }
+
+    public void testPasswordChange() {
+	compareTables("Password change",
+		PasswordChangeService.ITEM_PROJECTION, ENCRYPT_WHERE, null);
+    }
+
+}
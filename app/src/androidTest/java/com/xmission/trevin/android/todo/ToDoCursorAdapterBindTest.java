@@ -0,0 +1,221 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+/**
+ * Check that {@link ToDoCursorAdapter} keeps the widgets of a list
+ * item in its view holder instead of looking them up on every bind,
+ * and count the objects allocated when a view is bound to new rows.
+ */
+public class ToDoCursorAdapterBindTest extends InstrumentationTestCase {
+
+    private static final String TAG = "ToDoCursorAdapterBindTest";
+
+    /** The columns the list activity reads for each item */
+    private static final String[] COLUMNS = {
+	ToDoItem._ID, ToDoItem.CHECKED, ToDoItem.PRIORITY, ToDoItem.PRIVATE,
+	ToDoItem.DESCRIPTION, ToDoItem.MOD_TIME, ToDoItem.HAS_NOTE,
+	ToDoItem.ALARM_DAYS_EARLIER, ToDoItem.REPEAT_INTERVAL,
+	ToDoItem.DUE_TIME, ToDoItem.CATEGORY_NAME
+    };
+
+    /** Number of rows in the test cursor */
+    private static final int ROW_COUNT = 20;
+
+    /** Number of times every row is bound while counting */
+    private static final int BIND_PASSES = 5;
+
+    /**
+     * Most objects binding a view to a different row may allocate.
+     * Each row has a different due date, priority and category from
+     * the one before it, so this covers formatting the due date and
+     * priority along with the widgets&rsquo; own bookkeeping; creating
+     * a view holder or a date format for each row takes far more.
+     */
+    private static final int MAX_ALLOCATIONS_PER_BIND = 40;
+
+    private Context context;
+    private MatrixCursor cursor;
+    private ToDoCursorAdapter adapter;
+    private FrameLayout parent;
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+	context = getInstrumentation().getTargetContext();
+	cursor = new MatrixCursor(COLUMNS, ROW_COUNT);
+	long now = System.currentTimeMillis();
+	for (int i = 0; i < ROW_COUNT; i++) {
+	    cursor.addRow(new Object[] {
+		    (long) (i + 1), i % 3 == 0 ? 1 : 0, 1 + i % 5, 0,
+		    "Test item " + i, now - i * 60000L,
+		    (i % 2 == 0) ? 1 : 0,
+		    (i % 4 == 0) ? 1 : null,
+		    (i % 5 == 0) ? ToDoItem.REPEAT_DAILY : ToDoItem.REPEAT_NONE,
+		    (i % 3 == 0) ? null : now + (i - 10) * 86400000L,
+		    "Category " + (i % 4)
+	    });
+	}
+	getInstrumentation().runOnMainSync(new Runnable() {
+	    @Override
+	    public void run() {
+		adapter = new ToDoCursorAdapter(context, R.layout.list_item,
+			cursor, context.getContentResolver(),
+			ToDoItem.CONTENT_URI, null, null);
+		parent = new FrameLayout(context);
+	    }
+	});
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	cursor.close();
+	super.tearDown();
+    }
+
+    /**
+     * Run a block on the main thread, where views must be used,
+     * and rethrow anything it throws on the test thread so that
+     * a failed assertion fails the test instead of the process.
+     */
+    private void runOnMainThread(final Runnable block) {
+	final Throwable[] thrown = new Throwable[1];
+	getInstrumentation().runOnMainSync(new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    block.run();
+		} catch (Throwable t) {
+		    thrown[0] = t;
+		}
+	    }
+	});
+	if (thrown[0] instanceof Error)
+	    throw (Error) thrown[0];
+	if (thrown[0] instanceof RuntimeException)
+	    throw (RuntimeException) thrown[0];
+    }
+
+    /**
+     * Bind every row to a single recycled view and check that it kept
+     * the holder and widgets found when the view was created.
+     */
+    public void testHolderReused() {
+	runOnMainThread(new Runnable() {
+	    @Override
+	    public void run() {
+		cursor.moveToFirst();
+		View view = adapter.newView(context, cursor, parent);
+		ToDoCursorAdapter.ViewHolder holder =
+		    (ToDoCursorAdapter.ViewHolder) view.getTag();
+		assertNotNull("View holder", holder);
+		View checkBox = holder.checkBox;
+		View description = holder.editDescription;
+		View dueDate = holder.dueDateText;
+		for (int i = 0; i < ROW_COUNT; i++) {
+		    cursor.moveToPosition(i);
+		    adapter.bindView(view, context, cursor);
+		    assertSame("Holder after binding row " + i,
+			    holder, view.getTag());
+		    assertEquals("Item bound to row " + i,
+			    i + 1, holder.itemId);
+		}
+		assertSame(checkBox, holder.checkBox);
+		assertSame(description, holder.editDescription);
+		assertSame(dueDate, holder.dueDateText);
+		assertSame(checkBox,
+			view.findViewById(R.id.ToDoItemChecked));
+		assertSame(description,
+			view.findViewById(R.id.ToDoEditDescription));
+		assertSame(dueDate,
+			view.findViewById(R.id.ToDoTextDueDate));
+	    }
+	});
+    }
+
+    /**
+     * Bind one view to each row of the cursor in turn, several times
+     * over, and count the objects allocated on the main thread.
+     * Allocation counting is only a debugging aid in the runtime;
+     * where it does not count, this test is skipped with a warning.
+     */
+    @SuppressWarnings("deprecation")
+    public void testBindAllocations() {
+	final int[] allocations = new int[1];
+	final boolean[] counting = new boolean[1];
+	runOnMainThread(new Runnable() {
+	    @Override
+	    public void run() {
+		cursor.moveToFirst();
+		View view = adapter.newView(context, cursor, parent);
+		// Bind every row once first, so that nothing
+		// allocated only on first use is counted
+		for (int i = 0; i < ROW_COUNT; i++) {
+		    cursor.moveToPosition(i);
+		    adapter.bindView(view, context, cursor);
+		}
+		Object[] probe = new Object[8];
+		Debug.startAllocCounting();
+		try {
+		    // Make sure the runtime counts objects we know we made
+		    Debug.resetThreadAllocCount();
+		    for (int i = 0; i < probe.length; i++)
+			probe[i] = new Object();
+		    counting[0] =
+			Debug.getThreadAllocCount() >= probe.length;
+		    Debug.resetThreadAllocCount();
+		    for (int pass = 0; pass < BIND_PASSES; pass++) {
+			for (int i = 0; i < ROW_COUNT; i++) {
+			    cursor.moveToPosition(i);
+			    adapter.bindView(view, context, cursor);
+			}
+		    }
+		    allocations[0] = Debug.getThreadAllocCount();
+		} finally {
+		    Debug.stopAllocCounting();
+		}
+	    }
+	});
+	if (!counting[0]) {
+	    Log.w(TAG, "testBindAllocations skipped:"
+		    + " this runtime does not count allocations");
+	    return;
+	}
+	int binds = BIND_PASSES * ROW_COUNT;
+	Log.i(TAG, String.format("%d objects allocated in %d binds"
+		+ " (%.2f per bind)", allocations[0], binds,
+		(double) allocations[0] / binds));
+	assertTrue(String.format("%d objects allocated in %d binds;"
+		+ " expected at most %d per bind", allocations[0], binds,
+		MAX_ALLOCATIONS_PER_BIND), allocations[0]
+		<= MAX_ALLOCATIONS_PER_BIND * binds);
+    }
+
+}
@@ -20,14 +20,19 @@ import javax.crypto.ShortBufferException;
 public class AESCipher
     extends CipherSpi
 {
-    private AESLightEngine          baseEngine;
+    private BlockCipher             baseEngine;
     private GenericBlockCipher      cipher;
     private static SecureRandom     sRandom;
     private boolean                 initialized;
     private boolean                 padded;
 
-    protected AESCipher(
-        AESLightEngine engine)
+    /**
+     * Create a cipher using the given AES implementation,
+     * such as {@link AESEngine} for speed or {@link AESLightEngine}
+     * for a smaller memory footprint.
+     */
+    public AESCipher(
+        BlockCipher engine)
     {
         baseEngine = engine;
 
@@ -368,7 +373,7 @@ public class AESCipher
 
         public String getAlgorithmName();
 
-        public AESLightEngine getUnderlyingCipher();
+        public BlockCipher getUnderlyingCipher();
 
         public int getOutputSize(int len);
 
@@ -389,7 +394,7 @@ public class AESCipher
     {
         private BufferedBlockCipher cipher;
 
-        BufferedGenericBlockCipher(AESLightEngine cipher)
+        BufferedGenericBlockCipher(BlockCipher cipher)
         {
             this.cipher = new PaddedBufferedBlockCipher(cipher);
         }
@@ -410,7 +415,7 @@ public class AESCipher
             return cipher.getUnderlyingCipher().getAlgorithmName();
         }
 
-        public AESLightEngine getUnderlyingCipher()
+        public BlockCipher getUnderlyingCipher()
         {
             return cipher.getUnderlyingCipher();
         }
@@ -26,6 +26,7 @@ package com.xmission.trevin.android.crypto;
  *
  */
 public class AESLightEngine
+    implements BlockCipher
 {
     // The S box
     private static final byte[] S = {
@@ -15,7 +15,7 @@ public class BufferedBlockCipher
     protected int           bufOff;
 
     protected boolean       forEncryption;
-    protected AESLightEngine   cipher;
+    protected BlockCipher   cipher;
 
     protected boolean       partialBlockOkay;
 
@@ -32,7 +32,7 @@ public class BufferedBlockCipher
      * @param cipher the underlying block cipher this buffering object wraps.
      */
     public BufferedBlockCipher(
-        AESLightEngine     cipher)
+        BlockCipher     cipher)
     {
         this.cipher = cipher;
 
@@ -46,7 +46,7 @@ public class BufferedBlockCipher
      *
      * @return the cipher this object wraps.
      */
-    public AESLightEngine getUnderlyingCipher()
+    public BlockCipher getUnderlyingCipher()
     {
         return cipher;
     }
@@ -19,6 +19,15 @@ public class HMac
     private byte[] inputPad;
     private byte[] outputBuf;
 
+    /*
+     * Chaining variables after hashing the inner and outer key pads,
+     * and a scratch digest, for doFinalWords.
+     */
+    private int[] ipadChain = new int[8];
+    private int[] opadChain = new int[8];
+    private int[] innerHash = new int[8];
+    private SHA256Digest wordDigest = new SHA256Digest();
+
     /**
      * Base constructor for the standard digest algorithm.
      * 
@@ -80,6 +89,9 @@ public class HMac
         digest.update(inputPad, 0, inputPad.length);
 
         ipadState = digest.copy();
+
+        ipadState.getChainingValues(ipadChain);
+        opadState.getChainingValues(opadChain);
     }
 
     public int getMacSize()
@@ -136,6 +148,25 @@ public class HMac
         return len;
     }
 
+    /**
+     * Calculate the MAC of a message exactly one digest long, with the
+     * message and result as big-endian words.  This starts from the
+     * saved chaining variables of the key pads and hashes each
+     * single padded block directly, which is much faster than going
+     * through update and doFinal when the MAC is repeated many times
+     * as in PBKDF2.  Any data passed to update is not affected.
+     *
+     * @param in the 8 words of the message
+     * @param out where to put the 8 words of the MAC;
+     * may be the same array as <code>in</code>.
+     */
+    public void doFinalWords(int[] in, int[] out)
+    {
+        long bitLength = (blockLength + digestSize) * 8L;
+        wordDigest.processFinalBlock(ipadChain, in, 8, bitLength, innerHash);
+        wordDigest.processFinalBlock(opadChain, innerHash, 8, bitLength, out);
+    }
+
     /**
      * Reset the mac generator.
      */
@@ -13,6 +13,8 @@ public class PKCS5S2ParametersGenerator
 {
     private HMac hMac;
     private byte[] state;
+    private int[] stateWords;
+    private int[] resultWords;
 
     /**
      * construct a PKCS5 Scheme 2 Parameters generator.
@@ -21,6 +23,8 @@ public class PKCS5S2ParametersGenerator
     {
         hMac = new HMac(new SHA256Digest());
         state = new byte[hMac.getMacSize()];
+        stateWords = new int[state.length / 4];
+        resultWords = new int[state.length / 4];
     }
 
     private void F(
@@ -43,18 +47,22 @@ public class PKCS5S2ParametersGenerator
         hMac.update(iBuf, 0, iBuf.length);
         hMac.doFinal(state, 0);
 
-        System.arraycopy(state, 0, out, outOff, state.length);
+        // The remaining iterations always MAC one digest-sized block,
+        // so work on words using the HMac's saved key pad states.
+        Pack.bigEndianToInt(state, 0, stateWords);
+        System.arraycopy(stateWords, 0, resultWords, 0, stateWords.length);
 
         for (int count = 1; count < c; count++)
         {
-            hMac.update(state, 0, state.length);
-            hMac.doFinal(state, 0);
+            hMac.doFinalWords(stateWords, stateWords);
 
-            for (int j = 0; j != state.length; j++)
+            for (int j = 0; j != stateWords.length; j++)
             {
-                out[outOff + j] ^= state[j];
+                resultWords[j] ^= stateWords[j];
             }
         }
+
+        Pack.intToBigEndian(resultWords, out, outOff);
     }
 
     private byte[] generateDerivedKey(
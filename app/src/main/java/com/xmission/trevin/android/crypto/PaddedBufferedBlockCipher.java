@@ -19,7 +19,7 @@ public class PaddedBufferedBlockCipher
      * @param padding the padding type.
      */
     public PaddedBufferedBlockCipher(
-        AESLightEngine         cipher,
+        BlockCipher         cipher,
         PKCS7Padding  padding)
     {
         this.cipher = cipher;
@@ -35,7 +35,7 @@ public class PaddedBufferedBlockCipher
      * @param cipher the underlying block cipher this buffering object wraps.
      */
     public PaddedBufferedBlockCipher(
-        AESLightEngine     cipher)
+        BlockCipher     cipher)
     {
         this(cipher, new PKCS7Padding());
     }
@@ -118,6 +118,66 @@ public class SHA256Digest
         return DIGEST_LENGTH;
     }
 
+    /**
+     * Copy out the chaining variables.  This is only meaningful
+     * when the digest is on a block boundary, such as after
+     * hashing an HMAC key pad.
+     */
+    void getChainingValues(int[] out)
+    {
+        out[0] = H1;
+        out[1] = H2;
+        out[2] = H3;
+        out[3] = H4;
+        out[4] = H5;
+        out[5] = H6;
+        out[6] = H7;
+        out[7] = H8;
+    }
+
+    /**
+     * Hash the last block of a message directly from words, skipping
+     * the byte buffering and padding done by update and doFinal.
+     * This replaces the current state of the digest, so it should
+     * only be used on a scratch instance.
+     *
+     * @param chain the chaining variables before this block
+     * @param words the rest of the message (at most 13 words)
+     * @param wordCount the number of words in the message
+     * @param bitLength the length of the whole message in bits
+     * @param out where to put the 8 words of the result;
+     * may be the same array as <code>words</code>.
+     */
+    void processFinalBlock(
+        int[]   chain,
+        int[]   words,
+        int     wordCount,
+        long    bitLength,
+        int[]   out)
+    {
+        H1 = chain[0];
+        H2 = chain[1];
+        H3 = chain[2];
+        H4 = chain[3];
+        H5 = chain[4];
+        H6 = chain[5];
+        H7 = chain[6];
+        H8 = chain[7];
+
+        System.arraycopy(words, 0, X, 0, wordCount);
+        X[wordCount] = 0x80000000;
+        for (int i = wordCount + 1; i < 14; i++)
+        {
+            X[i] = 0;
+        }
+        X[14] = (int)(bitLength >>> 32);
+        X[15] = (int)(bitLength & 0xffffffff);
+
+        processBlock();
+
+        getChainingValues(out);
+    }
+
     /**
      * reset the chaining variables
      */
@@ -79,7 +79,7 @@ public class AlarmService extends IntentService {
     /**
      * The columns we are interested in from the item table
      */
-    private static final String[] ITEM_PROJECTION = new String[] {
+    static final String[] ITEM_PROJECTION = new String[] {
             ToDoItem._ID,
             ToDoItem.DESCRIPTION,
             ToDoItem.MOD_TIME,
@@ -89,6 +89,7 @@ public class AlarmService extends IntentService {
             ToDoItem.ALARM_TIME,
             ToDoItem.PRIVATE,
             ToDoItem.NOTIFICATION_TIME,
+            ToDoItem.NEXT_ALARM_TIME,
     };
 
     /**
@@ -131,17 +132,9 @@ public class AlarmService extends IntentService {
 	    notificationTime =
 		c.getLong(c.getColumnIndex(ToDoItem.NOTIFICATION_TIME));
 
-	    // Set the date of the next alarm.
-	    Calendar cal = Calendar.getInstance();
-	    cal.setTimeInMillis(dueDate);
-	    cal.add(Calendar.DATE, -daysEarlier);
-	    cal.set(Calendar.HOUR_OF_DAY, (int) (alarmTime / 3600000L));
-	    cal.set(Calendar.MINUTE, (int) (alarmTime / 60000L) % 60);
-	    cal.set(Calendar.SECOND, (int) (alarmTime / 1000L) % 60);
-	    cal.set(Calendar.MILLISECOND, (int) (alarmTime % 1000));
-	    while (cal.getTimeInMillis() < notificationTime)
-		cal.add(Calendar.DATE, 1);
-	    alarmDate = cal.getTime();
+	    // The provider keeps track of the date of the next alarm.
+	    alarmDate = new Date(c.getLong(
+		    c.getColumnIndex(ToDoItem.NEXT_ALARM_TIME)));
 	}
 
 	/**
@@ -224,6 +217,10 @@ public class AlarmService extends IntentService {
     @Override
     protected void onHandleIntent(Intent intent) {
 	Log.d(TAG, ".onHandleIntent(" + intent.getAction() + ")");
+	if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction()))
+	    // We have to change the alarm time on all items to
+	    // the current time zone.
+	    ToDoProvider.recomputeAlarms(getContentResolver());
 	refreshAlarms();
 	if (ACTION_NOTIFICATION_ACK.equals(intent.getAction())) {
 	    snooze(intent.getLongExtra(EXTRA_NOTIFICATION_DATE,
@@ -233,10 +230,6 @@ public class AlarmService extends IntentService {
 	else if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()) ||
 		Intent.ACTION_MAIN.equals(intent.getAction())) {
 	}
-	else if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
-	    // We have to change the alarm time on all items to
-	    // the current time zone.
-	}
 	else if (Intent.ACTION_EDIT.equals(intent.getAction())) {
 	    // Called by the To Do list activity when the data changes
 	}
@@ -253,11 +246,13 @@ public class AlarmService extends IntentService {
     }
 
     /**
-     * Read all alarms in the To Do list and generate our pending alarm list.
+     * Read the alarms in the To Do list and generate our pending alarm list.
      * We need to query the To-Do database for any entries
-     * which have an alarm at some point in the future,
-     * find the next one which is about to come due,
-     * and set an alarm to go off at that time.
+     * whose alarm has already gone off, find the next one
+     * which is about to come due, and set an alarm to go off
+     * at that time.  The provider keeps the next alarm time of
+     * each item in an index, so items whose alarms are further
+     * in the future don't need to be read.
      * <p>
      * In the event an alarm is scheduled one or more days
      * in advance, set the alarm to go off at the scheduled
@@ -270,12 +265,25 @@ public class AlarmService extends IntentService {
      * notify the user immediately regardless of the alarm time.
      */
     private void refreshAlarms() {
-	StringBuilder where = new StringBuilder();
-	where.append(ToDoItem.CHECKED).append(" = 0 AND ");
-	where.append(ToDoItem.DUE_TIME).append(" IS NOT NULL AND ");
-	where.append(ToDoItem.ALARM_DAYS_EARLIER).append(" IS NOT NULL");
-	Cursor c = getContentResolver().query(ToDoItem.CONTENT_URI,
-		ITEM_PROJECTION, where.toString(), null, null);
+	// Both terms are needed for the alarm index to be used
+	String where = ToDoItem.CHECKED + " = 0 AND "
+	    + ToDoItem.NEXT_ALARM_TIME + " IS NOT NULL AND "
+	    + ToDoItem.NEXT_ALARM_TIME;
+	String[] now = { Long.toString(System.currentTimeMillis()) };
+	// All alarms which have gone off
+	addPendingAlarms(getContentResolver().query(ToDoItem.CONTENT_URI,
+		ITEM_PROJECTION, where + " <= CAST(? AS INTEGER)", now,
+		ToDoItem.NEXT_ALARM_TIME));
+	// The next alarm to go off
+	addPendingAlarms(getContentResolver().query(
+		ToDoItem.CONTENT_URI.buildUpon().appendQueryParameter(
+			ToDoItem.QUERY_LIMIT, "1").build(),
+		ITEM_PROJECTION, where + " > CAST(? AS INTEGER)", now,
+		ToDoItem.NEXT_ALARM_TIME));
+    }
+
+    /** Add the items from a query to the pending alarm list */
+    private void addPendingAlarms(Cursor c) {
 	try {
 	    while (c.moveToNext()) {
 		ItemInfo item = new ItemInfo(c);
@@ -336,7 +344,9 @@ public class AlarmService extends IntentService {
 		    if (showPrivate) {
 			if (showEncrypted) {
 			    try {
-				desc = encryptor.decrypt(item.encryptedDescription);
+				desc = encryptor.decryptDescription(item.id,
+					item.lastModified,
+					item.encryptedDescription);
 			    } catch (GeneralSecurityException gsx) {
 				desc = "";
 				fmt = getString(R.string.NotificationFormatEncrypted);
@@ -0,0 +1,187 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.xmission.trevin.android.crypto.AESCipher;
+import com.xmission.trevin.android.crypto.AESEngine;
+
+import android.util.Log;
+
+/**
+ * Source of the AES ciphers used by {@link StringEncryption}.
+ * Private records are encrypted with AES in ECB mode with PKCS#7
+ * padding, which the bundled {@link AESCipher} implements.
+ * Most devices also have a platform provider for
+ * &ldquo;AES/ECB/PKCS5Padding&rdquo; (identical for 16-byte blocks)
+ * which may use the CPU&rsquo;s AES instructions, but we can only
+ * use it if it produces exactly the same bytes as the bundled cipher;
+ * otherwise existing records would no longer decrypt.
+ */
+abstract class CipherBackend {
+
+    private static final String TAG = "CipherBackend";
+
+    /** A cipher initialized with one key for one direction */
+    interface KeyedCipher {
+	/**
+	 * Encrypt or decrypt an entire message.  The cipher
+	 * is ready for another message afterward.
+	 */
+	byte[] doFinal(byte[] input) throws GeneralSecurityException;
+    }
+
+    /** @return a short name for log messages */
+    abstract String getName();
+
+    /**
+     * Create a new cipher.
+     *
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key the raw AES key
+     */
+    abstract KeyedCipher newCipher(int mode, byte[] key)
+	throws GeneralSecurityException;
+
+    /** The local AES implementation, which is always available */
+    static final CipherBackend BUNDLED = new CipherBackend() {
+	@Override
+	String getName() { return "bundled"; }
+
+	@Override
+	KeyedCipher newCipher(int mode, byte[] key)
+		throws GeneralSecurityException {
+	    final AESCipher cipher = new AESCipher(new AESEngine());
+	    cipher.init(mode, new SecretKeySpec(key, "AES"));
+	    return new KeyedCipher() {
+		@Override
+		public byte[] doFinal(byte[] input)
+			throws GeneralSecurityException {
+		    return cipher.doFinal(input);
+		}
+	    };
+	}
+    };
+
+    /** The platform&rsquo;s javax.crypto implementation */
+    static final CipherBackend PLATFORM = new CipherBackend() {
+	@Override
+	String getName() { return "platform"; }
+
+	@Override
+	KeyedCipher newCipher(int mode, byte[] key)
+		throws GeneralSecurityException {
+	    final Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+	    cipher.init(mode, new SecretKeySpec(key, "AES"));
+	    return new KeyedCipher() {
+		@Override
+		public byte[] doFinal(byte[] input)
+			throws GeneralSecurityException {
+		    return cipher.doFinal(input);
+		}
+	    };
+	}
+    };
+
+    /** Key sizes (in bytes) to check in the self-test */
+    private static final int[] TEST_KEY_SIZES = { 16, 24, 32 };
+
+    /**
+     * Message sizes to check in the self-test,
+     * covering empty, partial, and multiple blocks
+     */
+    private static final int[] TEST_MESSAGE_SIZES = {
+	0, 1, 15, 16, 17, 31, 32, 100
+    };
+
+    /** The backend chosen by {@link #select()} */
+    private static CipherBackend selected = null;
+
+    /**
+     * Choose the backend to use: the platform provider if it passes
+     * the self-test, otherwise the bundled cipher.  The test only
+     * runs the first time this is called.
+     */
+    static synchronized CipherBackend select() {
+	if (selected == null) {
+	    long start = System.nanoTime();
+	    selected = selfTest(PLATFORM) ? PLATFORM : BUNDLED;
+	    Log.i(TAG, "Using the " + selected.getName()
+		    + " AES implementation (self-test took "
+		    + ((System.nanoTime() - start) / 1000000) + "ms)");
+	}
+	return selected;
+    }
+
+    /**
+     * Check that a backend produces the same ciphertext as the
+     * bundled cipher and can decrypt what the bundled cipher wrote.
+     * Each cipher is used for several messages in a row
+     * to make sure it can be reused after {@code doFinal}.
+     *
+     * @return true if the candidate is compatible
+     */
+    static boolean selfTest(CipherBackend candidate) {
+	try {
+	    for (int keySize : TEST_KEY_SIZES) {
+		byte[] key = new byte[keySize];
+		for (int i = 0; i < keySize; i++)
+		    key[i] = (byte) (i * 7 + keySize);
+		KeyedCipher referenceEncryptor =
+		    BUNDLED.newCipher(Cipher.ENCRYPT_MODE, key);
+		KeyedCipher encryptor =
+		    candidate.newCipher(Cipher.ENCRYPT_MODE, key);
+		KeyedCipher decryptor =
+		    candidate.newCipher(Cipher.DECRYPT_MODE, key);
+		for (int length : TEST_MESSAGE_SIZES) {
+		    byte[] message = new byte[length];
+		    for (int i = 0; i < length; i++)
+			message[i] = (byte) (i * 37 + length);
+		    byte[] expected = referenceEncryptor.doFinal(message);
+		    if (!Arrays.equals(expected, encryptor.doFinal(message))) {
+			Log.w(TAG, candidate.getName() + " AES encryption"
+				+ " does not match for a " + (keySize * 8)
+				+ "-bit key and " + length + "-byte message");
+			return false;
+		    }
+		    if (!Arrays.equals(message, decryptor.doFinal(expected))) {
+			Log.w(TAG, candidate.getName() + " AES decryption"
+				+ " does not match for a " + (keySize * 8)
+				+ "-bit key and " + length + "-byte message");
+			return false;
+		    }
+		}
+	    }
+	    return true;
+	} catch (GeneralSecurityException gsx) {
+	    Log.w(TAG, candidate.getName() + " AES is not usable", gsx);
+	    return false;
+	} catch (RuntimeException rx) {
+	    Log.w(TAG, candidate.getName() + " AES failed the self-test", rx);
+	    return false;
+	}
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Runs encryption or decryption tasks on a small pool of worker
+ * threads while the calling thread reads the input and writes
+ * the results.  Results are returned by {@link #take()} in the
+ * same order their tasks were added, regardless of which worker
+ * finishes first, so the output does not depend on the number
+ * of workers.  The number of tasks in progress is bounded so that
+ * a large table does not have to be held in memory at once.
+ * <p>
+ * The {@link StringEncryption} objects used by the tasks must
+ * already have their keys, since key generation is not thread-safe;
+ * after that, each worker gets its own cipher from the object&rsquo;s
+ * cipher pool.
+ */
+class CryptoWorkQueue<T> {
+
+    /**
+     * Maximum number of worker threads.  This matches the number of
+     * idle ciphers {@link StringEncryption} keeps for each mode.
+     */
+    static final int MAX_WORKERS = 4;
+
+    /** Number of tasks which may be queued or running for each worker */
+    private static final int TASKS_PER_WORKER = 32;
+
+    private final ExecutorService executor;
+
+    /** Tasks which have been added but whose results are not yet taken */
+    private final ArrayDeque<Future<T>> pending = new ArrayDeque<Future<T>>();
+
+    /** Maximum size of {@link #pending} */
+    private final int capacity;
+
+    /**
+     * Get the number of workers to use on this device: one per
+     * processor, up to {@link #MAX_WORKERS}.  Each task takes only
+     * a few microseconds, so a worker which has to share a processor
+     * with another adds hand-off overhead without adding throughput;
+     * see {@code CryptoWorkQueueBenchmark} for the measurements.
+     *
+     * @return the number of workers
+     */
+    static int defaultWorkerCount() {
+	return Math.max(1, Math.min(MAX_WORKERS,
+		Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Create a work queue with the default number of workers */
+    CryptoWorkQueue() {
+	this(defaultWorkerCount());
+    }
+
+    /**
+     * Create a work queue.
+     *
+     * @param workers the number of worker threads
+     */
+    CryptoWorkQueue(int workers) {
+	if (workers < 1)
+	    throw new IllegalArgumentException("workers = " + workers);
+	capacity = workers * TASKS_PER_WORKER;
+	final AtomicInteger threadCount = new AtomicInteger();
+	executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+	    @Override
+	    public Thread newThread(final Runnable r) {
+		Thread t = new Thread(new Runnable() {
+		    @Override
+		    public void run() {
+			Process.setThreadPriority(
+				Process.THREAD_PRIORITY_BACKGROUND);
+			r.run();
+		    }
+		}, "CryptoWorker-" + threadCount.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	    }
+	});
+    }
+
+    /**
+     * Add a task to the queue.
+     *
+     * @return true if the queue is now full, in which case the caller
+     * should {@link #take()} a result before adding another task.
+     */
+    boolean add(Callable<T> task) {
+	pending.add(executor.submit(task));
+	return pending.size() >= capacity;
+    }
+
+    /** @return whether there are no more results to take */
+    boolean isEmpty() {
+	return pending.isEmpty();
+    }
+
+    /**
+     * Wait for the result of the oldest task in the queue.
+     *
+     * @throws GeneralSecurityException if the task failed
+     * to encrypt or decrypt its data
+     * @throws NoSuchElementException if the queue is empty
+     */
+    T take() throws GeneralSecurityException {
+	Future<T> future = pending.poll();
+	if (future == null)
+	    throw new NoSuchElementException();
+	try {
+	    return future.get();
+	} catch (InterruptedException ix) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException(
+		    "Interrupted while waiting for a crypto worker", ix);
+	} catch (ExecutionException ex) {
+	    Throwable cause = ex.getCause();
+	    if (cause instanceof GeneralSecurityException)
+		throw (GeneralSecurityException) cause;
+	    if (cause instanceof RuntimeException)
+		throw (RuntimeException) cause;
+	    if (cause instanceof Error)
+		throw (Error) cause;
+	    throw new GeneralSecurityException(cause);
+	}
+    }
+
+    /**
+     * Stop the worker threads, abandoning any tasks
+     * whose results have not been taken.
+     */
+    void shutdown() {
+	for (Future<T> future : pending)
+	    future.cancel(true);
+	pending.clear();
+	executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.security.GeneralSecurityException;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.util.Log;
+
+/**
+ * A cursor over To Do items which presents the descriptions of
+ * encrypted items as plain text.  All of the descriptions are
+ * decrypted when the cursor is created, so this should be
+ * constructed in a loader&rsquo;s background thread; the list
+ * adapter can then read the description of every row as a string.
+ * <p>
+ * If the password has not been given or a description could not
+ * be decrypted, {@link #getString} returns {@code null} for that
+ * row&rsquo;s description.
+ */
+class DecryptingCursor extends CursorWrapper {
+
+    private static final String TAG = "DecryptingCursor";
+
+    /** Index of the description column */
+    private final int descriptionColumn;
+
+    /**
+     * Decrypted descriptions by cursor position,
+     * or {@code null} if none of the rows are encrypted.
+     */
+    private final String[] descriptions;
+
+    /** Which rows have encrypted descriptions */
+    private final boolean[] encrypted;
+
+    /**
+     * Wrap a cursor and decrypt its descriptions.
+     * The cursor must include the {@link ToDoItem#_ID},
+     * {@link ToDoItem#DESCRIPTION}, {@link ToDoItem#MOD_TIME},
+     * and {@link ToDoItem#PRIVATE} columns.
+     *
+     * @param cursor the item cursor
+     * @param encryptor the encryption object holding the user&rsquo;s key
+     */
+    DecryptingCursor(Cursor cursor, StringEncryption encryptor) {
+	super(cursor);
+	descriptionColumn = cursor.getColumnIndexOrThrow(ToDoItem.DESCRIPTION);
+	int privateColumn = cursor.getColumnIndexOrThrow(ToDoItem.PRIVATE);
+	int idColumn = cursor.getColumnIndexOrThrow(ToDoItem._ID);
+	int modColumn = cursor.getColumnIndexOrThrow(ToDoItem.MOD_TIME);
+	int count = cursor.getCount();
+	String[] plain = null;
+	boolean[] flags = null;
+	int position = cursor.getPosition();
+	for (int i = 0; i < count; i++) {
+	    if (!cursor.moveToPosition(i))
+		break;
+	    if (cursor.getInt(privateColumn) <= 1)
+		continue;
+	    if (flags == null) {
+		flags = new boolean[count];
+		plain = new String[count];
+	    }
+	    flags[i] = true;
+	    if (!encryptor.hasKey())
+		continue;
+	    try {
+		plain[i] = encryptor.decryptDescription(
+			cursor.getLong(idColumn), cursor.getLong(modColumn),
+			cursor.getBlob(descriptionColumn));
+	    } catch (GeneralSecurityException gsx) {
+		Log.e(TAG, "Unable to decrypt the description for item "
+			+ cursor.getLong(idColumn), gsx);
+	    }
+	}
+	cursor.moveToPosition(position);
+	descriptions = plain;
+	encrypted = flags;
+    }
+
+    /** @return whether the current row&rsquo;s description is encrypted */
+    private boolean isEncryptedRow() {
+	if (encrypted == null)
+	    return false;
+	int position = getPosition();
+	return (position >= 0) && (position < encrypted.length)
+		&& encrypted[position];
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+	if ((columnIndex == descriptionColumn) && isEncryptedRow())
+	    return descriptions[getPosition()];
+	return super.getString(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+	if ((columnIndex == descriptionColumn) && isEncryptedRow())
+	    return (descriptions[getPosition()] == null)
+		    ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+	return super.getType(columnIndex);
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+	if ((columnIndex == descriptionColumn) && isEncryptedRow())
+	    return descriptions[getPosition()] == null;
+	return super.isNull(columnIndex);
+    }
+
+}
@@ -0,0 +1,665 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.util.Arrays;
+
+import static com.xmission.trevin.android.todo.ToDoListActivity.*;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.content.ContentResolver;
+import android.content.SharedPreferences;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+/**
+ * The fields shown in the item list and used for filtering and
+ * sorting every To Do item, copied into arrays.  Changing the
+ * category, sort order, or whether completed or private items are
+ * shown only needs {@link #select} to pick and order the rows again,
+ * which takes a few milliseconds instead of another query.
+ * <p>
+ * The snapshot is read a page at a time in item ID order, so no one
+ * cursor has to hold every item, and only whether each item has a
+ * note is read rather than the note itself.  The cursors returned
+ * by {@link #select} serve every column the list shows from the
+ * snapshot, so binding and scrolling never query the provider.
+ * <p>
+ * The filters and the six {@link ToDoItem#USER_SORT_ORDERS} are
+ * applied here the same way the SQL query would apply them, with
+ * one difference: encrypted descriptions are sorted by their
+ * plain text if it is known, rather than by the encrypted bytes.
+ * Rows which are equal in every sort key keep their item ID order.
+ */
+class ItemListSnapshot {
+
+    private static final String TAG = "ItemListSnapshot";
+
+    /** The columns read for every item when the snapshot is taken */
+    private static final String[] SNAPSHOT_PROJECTION = {
+	ToDoItem._ID,
+	ToDoItem.CHECKED,
+	ToDoItem.VISIBLE_TIME,
+	ToDoItem.PRIVATE,
+	ToDoItem.CATEGORY_ID,
+	ToDoItem.PRIORITY,
+	ToDoItem.DUE_TIME,
+	ToDoItem.MOD_TIME,
+	ToDoItem.CATEGORY_NAME,
+	ToDoItem.DESCRIPTION,
+	ToDoItem.HAS_NOTE,
+	ToDoItem.ALARM_DAYS_EARLIER,
+	ToDoItem.REPEAT_INTERVAL,
+	ToDoItem.REPEAT_INCREMENT,
+	ToDoItem.REPEAT_DAY,
+	ToDoItem.REPEAT_DAY2,
+	ToDoItem.REPEAT_WEEK,
+	ToDoItem.REPEAT_WEEK2,
+	ToDoItem.REPEAT_WEEK_DAYS,
+	ToDoItem.REPEAT_MONTH,
+	ToDoItem.REPEAT_END,
+    };
+
+    /**
+     * The columns of the cursors returned by {@link #select},
+     * in the order of the column indexes below.
+     */
+    private static final String[] ROW_COLUMNS = {
+	ToDoItem._ID,
+	ToDoItem.DESCRIPTION,
+	ToDoItem.MOD_TIME,
+	ToDoItem.CHECKED,
+	ToDoItem.HAS_NOTE,
+	ToDoItem.ALARM_DAYS_EARLIER,
+	ToDoItem.DUE_TIME,
+	ToDoItem.CATEGORY_NAME,
+	ToDoItem.PRIVATE,
+	ToDoItem.PRIORITY,
+	// The repeat columns must stay last, in the order of REPEAT_COLUMNS
+	ToDoItem.REPEAT_INTERVAL,
+	ToDoItem.REPEAT_INCREMENT,
+	ToDoItem.REPEAT_DAY,
+	ToDoItem.REPEAT_DAY2,
+	ToDoItem.REPEAT_WEEK,
+	ToDoItem.REPEAT_WEEK2,
+	ToDoItem.REPEAT_WEEK_DAYS,
+	ToDoItem.REPEAT_MONTH,
+	ToDoItem.REPEAT_END,
+    };
+
+    private static final int ID_COLUMN = 0;
+    private static final int DESCRIPTION_COLUMN = 1;
+    private static final int MOD_TIME_COLUMN = 2;
+    private static final int CHECKED_COLUMN = 3;
+    private static final int HAS_NOTE_COLUMN = 4;
+    private static final int ALARM_COLUMN = 5;
+    private static final int DUE_TIME_COLUMN = 6;
+    private static final int CATEGORY_NAME_COLUMN = 7;
+    private static final int PRIVATE_COLUMN = 8;
+    private static final int PRIORITY_COLUMN = 9;
+    private static final int FIRST_REPEAT_COLUMN = 10;
+
+    /** The repeat settings columns, which are kept for repeating items */
+    private static final String[] REPEAT_COLUMNS = Arrays.copyOfRange(
+	    ROW_COLUMNS, FIRST_REPEAT_COLUMN, ROW_COLUMNS.length);
+
+    /** The number of items to read at a time when taking the snapshot */
+    private static final int SNAPSHOT_PAGE_SIZE = 256;
+
+    /** Value used in place of a missing due date or visible time */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /** Value used in place of a missing alarm */
+    private static final int NO_ALARM = Integer.MIN_VALUE;
+
+    /** Number of items in the snapshot */
+    private int count = 0;
+
+    private long[] itemId;
+    private boolean[] checked;
+    private long[] visibleTime;
+    private int[] privacy;
+    private long[] categoryId;
+    private int[] priority;
+    private long[] dueTime;
+    private long[] modTime;
+
+    /**
+     * The descriptions of the items, with encrypted ones decrypted;
+     * {@code null} if an encrypted description could not be decrypted.
+     */
+    private String[] description;
+
+    private boolean[] hasNote;
+
+    /** The days of advance notice for each alarm, or {@link #NO_ALARM} */
+    private int[] alarmDaysEarlier;
+
+    /**
+     * The {@link #REPEAT_COLUMNS} of each item which repeats, with
+     * {@code null} for the columns which are null; {@code null}
+     * for items which do not repeat.
+     */
+    private Long[][] repeatValues;
+
+    /** The name of each category, by category ID */
+    private final LongSparseArray<String> categoryNames =
+	new LongSparseArray<String>();
+
+    /**
+     * The order of each row&rsquo;s category name,
+     * compared case-insensitively; rows with the
+     * same category name have the same rank.
+     */
+    private final int[] categoryRank;
+
+    /** The order of each row&rsquo;s description, as for categories */
+    private final int[] descriptionRank;
+
+    /**
+     * Read the list, filter, and sort fields of every item.
+     * This should be done in a loader&rsquo;s background thread.
+     *
+     * @param resolver the content resolver to query
+     * @param uri the URI of the To Do items
+     * @param encryptor the encryption object holding the user&rsquo;s
+     * key, used to sort and show encrypted descriptions
+     */
+    ItemListSnapshot(ContentResolver resolver, Uri uri,
+	    StringEncryption encryptor) {
+	long start = System.nanoTime();
+	allocate(SNAPSHOT_PAGE_SIZE);
+	String[] categoryKeys = new String[SNAPSHOT_PAGE_SIZE];
+	String[] descriptionKeys = new String[SNAPSHOT_PAGE_SIZE];
+
+	Uri pageUri = uri.buildUpon().appendQueryParameter(
+		ToDoItem.QUERY_LIMIT, Integer.toString(SNAPSHOT_PAGE_SIZE))
+		.build();
+	final String ORDER = ToDoProvider.TODO_TABLE_NAME + "." + ToDoItem._ID;
+	String lastKey = null;
+	while (true) {
+	    Cursor c = resolver.query((lastKey == null) ? pageUri
+		    : pageUri.buildUpon().appendQueryParameter(
+			    ToDoItem.QUERY_AFTER, lastKey).build(),
+		    SNAPSHOT_PROJECTION, null, null, ORDER);
+	    if (c == null)
+		break;
+	    try {
+		int pageCount = c.getCount();
+		if (count + pageCount > itemId.length) {
+		    int capacity = Math.max(2 * itemId.length, count + pageCount);
+		    allocate(capacity);
+		    categoryKeys = Arrays.copyOf(categoryKeys, capacity);
+		    descriptionKeys = Arrays.copyOf(descriptionKeys, capacity);
+		}
+		// Decrypt private descriptions here rather than
+		// in the adapter, which runs on the UI thread.
+		Cursor dc = new DecryptingCursor(c, encryptor);
+		int idColumn = dc.getColumnIndexOrThrow(ToDoItem._ID);
+		int checkedColumn = dc.getColumnIndexOrThrow(ToDoItem.CHECKED);
+		int visibleColumn = dc.getColumnIndexOrThrow(ToDoItem.VISIBLE_TIME);
+		int privateColumn = dc.getColumnIndexOrThrow(ToDoItem.PRIVATE);
+		int categoryIdColumn = dc.getColumnIndexOrThrow(ToDoItem.CATEGORY_ID);
+		int priorityColumn = dc.getColumnIndexOrThrow(ToDoItem.PRIORITY);
+		int dueColumn = dc.getColumnIndexOrThrow(ToDoItem.DUE_TIME);
+		int modColumn = dc.getColumnIndexOrThrow(ToDoItem.MOD_TIME);
+		int categoryColumn = dc.getColumnIndexOrThrow(ToDoItem.CATEGORY_NAME);
+		int descriptionColumn = dc.getColumnIndexOrThrow(ToDoItem.DESCRIPTION);
+		int noteColumn = dc.getColumnIndexOrThrow(ToDoItem.HAS_NOTE);
+		int alarmColumn = dc.getColumnIndexOrThrow(ToDoItem.ALARM_DAYS_EARLIER);
+		int[] repeatColumns = new int[REPEAT_COLUMNS.length];
+		for (int j = 0; j < REPEAT_COLUMNS.length; j++)
+		    repeatColumns[j] = dc.getColumnIndexOrThrow(REPEAT_COLUMNS[j]);
+		while (dc.moveToNext()) {
+		    int i = count++;
+		    itemId[i] = dc.getLong(idColumn);
+		    checked[i] = dc.getInt(checkedColumn) != 0;
+		    visibleTime[i] = dc.isNull(visibleColumn) ? NEVER
+			    : dc.getLong(visibleColumn);
+		    privacy[i] = dc.getInt(privateColumn);
+		    categoryId[i] = dc.getLong(categoryIdColumn);
+		    priority[i] = dc.getInt(priorityColumn);
+		    dueTime[i] = dc.isNull(dueColumn) ? NEVER
+			    : dc.getLong(dueColumn);
+		    modTime[i] = dc.getLong(modColumn);
+		    String categoryName = dc.getString(categoryColumn);
+		    if (categoryNames.indexOfKey(categoryId[i]) < 0)
+			categoryNames.put(categoryId[i], categoryName);
+		    categoryKeys[i] = lower(categoryName);
+		    description[i] = dc.getString(descriptionColumn);
+		    // Encrypted descriptions which could not be decrypted
+		    // are sorted after all of the readable ones.
+		    descriptionKeys[i] = ((privacy[i] > 1) &&
+			    (description[i] == null)) ? UNREADABLE
+			    : lower(description[i]);
+		    hasNote[i] = dc.getInt(noteColumn) != 0;
+		    alarmDaysEarlier[i] = dc.isNull(alarmColumn) ? NO_ALARM
+			    : dc.getInt(alarmColumn);
+		    // Column 0 of the repeat settings is the interval
+		    if (!dc.isNull(repeatColumns[0]) && (dc.getInt(repeatColumns[0])
+			    != ToDoItem.REPEAT_NONE)) {
+			Long[] values = new Long[repeatColumns.length];
+			for (int j = 0; j < repeatColumns.length; j++) {
+			    if (!dc.isNull(repeatColumns[j]))
+				values[j] = dc.getLong(repeatColumns[j]);
+			}
+			repeatValues[i] = values;
+		    }
+		}
+		if (pageCount < SNAPSHOT_PAGE_SIZE)
+		    break;
+		c.moveToLast();
+		lastKey = c.getString(c.getColumnIndexOrThrow(ToDoItem.PAGE_KEY));
+	    } finally {
+		c.close();
+	    }
+	}
+	categoryRank = rank(categoryKeys, count);
+	descriptionRank = rank(descriptionKeys, count);
+	Log.d(TAG, String.format("Read %d items in %d ms", count,
+		(System.nanoTime() - start) / 1000000));
+    }
+
+    /**
+     * Make room for a given number of items,
+     * keeping the ones already read.
+     */
+    private void allocate(int capacity) {
+	if (itemId == null) {
+	    itemId = new long[capacity];
+	    checked = new boolean[capacity];
+	    visibleTime = new long[capacity];
+	    privacy = new int[capacity];
+	    categoryId = new long[capacity];
+	    priority = new int[capacity];
+	    dueTime = new long[capacity];
+	    modTime = new long[capacity];
+	    description = new String[capacity];
+	    hasNote = new boolean[capacity];
+	    alarmDaysEarlier = new int[capacity];
+	    repeatValues = new Long[capacity][];
+	    return;
+	}
+	itemId = Arrays.copyOf(itemId, capacity);
+	checked = Arrays.copyOf(checked, capacity);
+	visibleTime = Arrays.copyOf(visibleTime, capacity);
+	privacy = Arrays.copyOf(privacy, capacity);
+	categoryId = Arrays.copyOf(categoryId, capacity);
+	priority = Arrays.copyOf(priority, capacity);
+	dueTime = Arrays.copyOf(dueTime, capacity);
+	modTime = Arrays.copyOf(modTime, capacity);
+	description = Arrays.copyOf(description, capacity);
+	hasNote = Arrays.copyOf(hasNote, capacity);
+	alarmDaysEarlier = Arrays.copyOf(alarmDaysEarlier, capacity);
+	repeatValues = Arrays.copyOf(repeatValues, capacity);
+    }
+
+    /**
+     * Placeholder sort key for descriptions which are encrypted;
+     * compared by identity, so no real description can match it.
+     */
+    private static final String UNREADABLE = new String("\uffff");
+
+    /**
+     * Lower-case the ASCII letters of a string,
+     * the same as SQLite&rsquo;s built-in lower() function.
+     */
+    private static String lower(String s) {
+	if (s == null)
+	    return null;
+	char[] chars = null;
+	for (int i = 0; i < s.length(); i++) {
+	    char c = s.charAt(i);
+	    if ((c >= 'A') && (c <= 'Z')) {
+		if (chars == null)
+		    chars = s.toCharArray();
+		chars[i] = (char) (c + ('a' - 'A'));
+	    }
+	}
+	return (chars == null) ? s : new String(chars);
+    }
+
+    /** Compare two sort keys, with {@code null} first as in SQL */
+    private static int compareKeys(String a, String b) {
+	if (a == b)
+	    return 0;
+	if (a == null)
+	    return -1;
+	if (b == null)
+	    return 1;
+	if (a == UNREADABLE)
+	    return 1;
+	if (b == UNREADABLE)
+	    return -1;
+	return a.compareTo(b);
+    }
+
+    /**
+     * Assign each key its place in sorted order,
+     * giving equal keys the same rank.
+     */
+    private static int[] rank(final String[] keys, int n) {
+	int[] rows = new int[n];
+	for (int i = 0; i < n; i++)
+	    rows[i] = i;
+	sort(rows, n, new RowComparator() {
+	    @Override
+	    public int compare(int a, int b) {
+		return compareKeys(keys[a], keys[b]);
+	    }
+	});
+	int[] ranks = new int[n];
+	int r = 0;
+	for (int i = 0; i < n; i++) {
+	    if ((i > 0) && (compareKeys(keys[rows[i - 1]], keys[rows[i]]) != 0))
+		r++;
+	    ranks[rows[i]] = r;
+	}
+	return ranks;
+    }
+
+    /** Compares two rows by their positions in the snapshot */
+    private interface RowComparator {
+	int compare(int a, int b);
+    }
+
+    /**
+     * Sort the first <code>n</code> row positions in an array.
+     * This is a merge sort, so rows which compare equal
+     * stay in the order they were given.
+     */
+    private static void sort(int[] rows, int n, RowComparator cmp) {
+	int[] src = rows;
+	int[] dst = new int[n];
+	for (int width = 1; width < n; width *= 2) {
+	    for (int lo = 0; lo < n; lo += 2 * width) {
+		int mid = Math.min(lo + width, n);
+		int hi = Math.min(lo + 2 * width, n);
+		int i = lo, j = mid, k = lo;
+		while ((i < mid) && (j < hi))
+		    dst[k++] = (cmp.compare(src[j], src[i]) < 0)
+			    ? src[j++] : src[i++];
+		while (i < mid)
+		    dst[k++] = src[i++];
+		while (j < hi)
+		    dst[k++] = src[j++];
+	    }
+	    int[] t = src;
+	    src = dst;
+	    dst = t;
+	}
+	if (src != rows)
+	    System.arraycopy(src, 0, rows, 0, n);
+    }
+
+    /** @return the comparator for one of the user sort orders */
+    private RowComparator getComparator(final int sortOrder) {
+	return new RowComparator() {
+	    @Override
+	    public int compare(int a, int b) {
+		int c;
+		switch (sortOrder) {
+		default:
+		case 0:	// priority, due date, description
+		    c = compareInts(priority[a], priority[b]);
+		    if (c == 0)
+			c = compareLongs(dueTime[a], dueTime[b]);
+		    break;
+		case 1:	// due date, priority, description
+		    c = compareLongs(dueTime[a], dueTime[b]);
+		    if (c == 0)
+			c = compareInts(priority[a], priority[b]);
+		    break;
+		case 2:	// category, priority, description
+		    c = compareInts(categoryRank[a], categoryRank[b]);
+		    if (c == 0)
+			c = compareLongs(categoryId[a], categoryId[b]);
+		    if (c == 0)
+			c = compareInts(priority[a], priority[b]);
+		    break;
+		case 3:	// category, due date, description
+		    c = compareInts(categoryRank[a], categoryRank[b]);
+		    if (c == 0)
+			c = compareLongs(categoryId[a], categoryId[b]);
+		    if (c == 0)
+			c = compareLongs(dueTime[a], dueTime[b]);
+		    break;
+		case 4:	// description
+		    c = 0;
+		    break;
+		case 5:	// due date, description
+		    c = compareLongs(dueTime[a], dueTime[b]);
+		    break;
+		}
+		if (c == 0)
+		    c = compareInts(descriptionRank[a], descriptionRank[b]);
+		if (c == 0)
+		    c = compareLongs(modTime[a], modTime[b]);
+		return c;
+	    }
+	};
+    }
+
+    private static int compareInts(int a, int b) {
+	return (a < b) ? -1 : ((a == b) ? 0 : 1);
+    }
+
+    private static int compareLongs(long a, long b) {
+	return (a < b) ? -1 : ((a == b) ? 0 : 1);
+    }
+
+    /**
+     * Pick the rows to show according to the current preferences
+     * and sort them.
+     *
+     * @return a new cursor over the selected rows in order,
+     * which the caller is responsible for closing
+     */
+    FilteredCursor select(SharedPreferences prefs) {
+	long start = System.nanoTime();
+	boolean showChecked = prefs.getBoolean(TPREF_SHOW_CHECKED, false);
+	boolean showPrivate = prefs.getBoolean(TPREF_SHOW_PRIVATE, false);
+	long selectedCategory = prefs.getLong(TPREF_SELECTED_CATEGORY, -1);
+	int sortOrder = prefs.getInt(TPREF_SORT_ORDER, 0);
+	if ((sortOrder < 0) || (sortOrder >= ToDoItem.USER_SORT_ORDERS.length))
+	    sortOrder = 0;
+	long now = System.currentTimeMillis();
+
+	int[] rows = new int[count];
+	int n = 0;
+	for (int i = 0; i < count; i++) {
+	    if (!showChecked && (checked[i] || (visibleTime[i] >= now)))
+		continue;
+	    if (!showPrivate && (privacy[i] != 0))
+		continue;
+	    if ((selectedCategory >= 0) && (categoryId[i] != selectedCategory))
+		continue;
+	    rows[n++] = i;
+	}
+	sort(rows, n, getComparator(sortOrder));
+	Log.d(TAG, String.format(".select: %d of %d items in %d ms",
+		n, count, (System.nanoTime() - start) / 1000000));
+	return new FilteredCursor(this, rows, n);
+    }
+
+    /**
+     * A cursor over some of the rows of a snapshot, in a given order.
+     * Every column is read from the snapshot&rsquo;s arrays, so moving
+     * the cursor never touches the database and it may be used freely
+     * on the UI thread.  Items changed since the snapshot was taken
+     * show their old values; the loader which created the snapshot
+     * is expected to watch for changes and deliver a new one.
+     * Content observers registered on this cursor are never notified.
+     * <p>
+     * Encrypted descriptions are returned as the plain text
+     * decrypted when the snapshot was taken, or {@code null}
+     * if they could not be decrypted.  Blobs are not supported.
+     */
+    static class FilteredCursor extends AbstractCursor {
+	private final ItemListSnapshot snapshot;
+	private final int[] rows;
+	private final int count;
+
+	FilteredCursor(ItemListSnapshot snapshot, int[] rows, int count) {
+	    this.snapshot = snapshot;
+	    this.rows = rows;
+	    this.count = count;
+	}
+
+	/** @return the snapshot this cursor was selected from */
+	ItemListSnapshot getSnapshot() {
+	    return snapshot;
+	}
+
+	@Override
+	public int getCount() {
+	    return count;
+	}
+
+	@Override
+	public String[] getColumnNames() {
+	    return ROW_COLUMNS;
+	}
+
+	/** @return the snapshot index of the current row */
+	private int snapshotRow() {
+	    if ((mPos < 0) || (mPos >= count))
+		throw new IllegalStateException(
+			"Cursor is not on a row: position " + mPos);
+	    return rows[mPos];
+	}
+
+	/**
+	 * @return the value of one of the repeat columns of the
+	 * current row, or {@code null} if it is null.
+	 */
+	private Long getRepeatValue(int column) {
+	    Long[] values = snapshot.repeatValues[snapshotRow()];
+	    return (values == null) ? null
+		    : values[column - FIRST_REPEAT_COLUMN];
+	}
+
+	@Override
+	public long getLong(int column) {
+	    int row = snapshotRow();
+	    switch (column) {
+	    case ID_COLUMN:
+		return snapshot.itemId[row];
+	    case MOD_TIME_COLUMN:
+		return snapshot.modTime[row];
+	    case CHECKED_COLUMN:
+		return snapshot.checked[row] ? 1 : 0;
+	    case HAS_NOTE_COLUMN:
+		return snapshot.hasNote[row] ? 1 : 0;
+	    case ALARM_COLUMN:
+		return (snapshot.alarmDaysEarlier[row] == NO_ALARM) ? 0
+			: snapshot.alarmDaysEarlier[row];
+	    case DUE_TIME_COLUMN:
+		return (snapshot.dueTime[row] == NEVER) ? 0
+			: snapshot.dueTime[row];
+	    case PRIVATE_COLUMN:
+		return snapshot.privacy[row];
+	    case PRIORITY_COLUMN:
+		return snapshot.priority[row];
+	    case DESCRIPTION_COLUMN:
+	    case CATEGORY_NAME_COLUMN:
+		String s = getString(column);
+		try {
+		    return (s == null) ? 0 : Long.parseLong(s);
+		} catch (NumberFormatException nfx) {
+		    return 0;
+		}
+	    default:
+		if ((column < FIRST_REPEAT_COLUMN) ||
+			(column >= ROW_COLUMNS.length))
+		    throw new IndexOutOfBoundsException(
+			    "No column " + column);
+		Long value = getRepeatValue(column);
+		return (value == null) ? 0 : value;
+	    }
+	}
+
+	@Override
+	public int getInt(int column) {
+	    return (int) getLong(column);
+	}
+
+	@Override
+	public short getShort(int column) {
+	    return (short) getLong(column);
+	}
+
+	@Override
+	public float getFloat(int column) {
+	    return getLong(column);
+	}
+
+	@Override
+	public double getDouble(int column) {
+	    return getLong(column);
+	}
+
+	@Override
+	public String getString(int column) {
+	    int row = snapshotRow();
+	    switch (column) {
+	    case DESCRIPTION_COLUMN:
+		return snapshot.description[row];
+	    case CATEGORY_NAME_COLUMN:
+		return snapshot.categoryNames.get(snapshot.categoryId[row]);
+	    default:
+		return isNull(column) ? null : Long.toString(getLong(column));
+	    }
+	}
+
+	@Override
+	public int getType(int column) {
+	    if (isNull(column))
+		return FIELD_TYPE_NULL;
+	    if ((column == DESCRIPTION_COLUMN) ||
+		    (column == CATEGORY_NAME_COLUMN))
+		return FIELD_TYPE_STRING;
+	    return FIELD_TYPE_INTEGER;
+	}
+
+	@Override
+	public boolean isNull(int column) {
+	    int row = snapshotRow();
+	    switch (column) {
+	    case DESCRIPTION_COLUMN:
+	    case CATEGORY_NAME_COLUMN:
+		return getString(column) == null;
+	    case ALARM_COLUMN:
+		return snapshot.alarmDaysEarlier[row] == NO_ALARM;
+	    case DUE_TIME_COLUMN:
+		return snapshot.dueTime[row] == NEVER;
+	    default:
+		if (column < FIRST_REPEAT_COLUMN)
+		    return false;
+		return getRepeatValue(column) == null;
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.util.*;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.content.*;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Toast;
+
+/**
+ * Writes changes made in the item list to the database on a
+ * background thread.  Changes to the same item which arrive within
+ * {@link #FLUSH_DELAY} milliseconds of each other are merged, and
+ * all of the pending changes are written in one batch, so a burst
+ * of edits costs a single transaction and a single reload of the
+ * list rather than one of each per edit.
+ * <p>
+ * Until a change shows up in the list&rsquo;s cursor, the list
+ * adapters should show the values from {@link #getPendingValues}
+ * in place of what the cursor says, so that a row rebound in the
+ * meantime does not flip back to its old state.  Every change
+ * must include the item&rsquo;s new {@link ToDoItem#MOD_TIME},
+ * which is how we tell that the cursor has caught up.
+ * <p>
+ * If a batch cannot be written, the user is told and the
+ * list is reloaded to show what is actually in the database.
+ */
+class ItemWriteQueue {
+
+    private static final String TAG = "ItemWriteQueue";
+
+    /** How long to wait for more changes before writing (milliseconds) */
+    static final long FLUSH_DELAY = 300;
+
+    /**
+     * How long to keep showing a written change which has not shown
+     * up in a reloaded list (milliseconds).  This covers items which
+     * are no longer in the list, such as completed items when those
+     * are hidden, so they are never rebound.
+     */
+    static final long RELEASE_DELAY = 5000;
+
+    private static ItemWriteQueue instance = null;
+
+    /** @return the write queue for this process */
+    static synchronized ItemWriteQueue getInstance(Context context) {
+	if (instance == null)
+	    instance = new ItemWriteQueue(context.getApplicationContext());
+	return instance;
+    }
+
+    /** A change which has been taken from the queue to be written */
+    private static class WrittenChange {
+	final ContentValues values;
+	/** The modification time written with the change */
+	final long modTime;
+	/** When the change was committed, or 0 if still being written */
+	long committedAt = 0;
+
+	WrittenChange(ContentValues values) {
+	    this.values = values;
+	    Long mod = values.getAsLong(ToDoItem.MOD_TIME);
+	    modTime = (mod == null) ? Long.MAX_VALUE : mod;
+	}
+    }
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Changes which have not been written yet, by item ID */
+    private final Map<Long,ContentValues> pending =
+	new LinkedHashMap<Long,ContentValues>();
+
+    /**
+     * Changes which are being written or have been written
+     * but not yet seen in the list, by item ID.
+     */
+    private final Map<Long,WrittenChange> written =
+	new HashMap<Long,WrittenChange>();
+
+    /** Whether a flush has been posted to the handler */
+    private boolean flushScheduled = false;
+
+    private final Runnable flusher = new Runnable() {
+	@Override
+	public void run() {
+	    flush();
+	}
+    };
+
+    /** Tells the user that changes could not be saved */
+    private final Runnable failureNotice = new Runnable() {
+	@Override
+	public void run() {
+	    Toast.makeText(context, R.string.ToastItemUpdateFailed,
+		    Toast.LENGTH_LONG).show();
+	}
+    };
+
+    private ItemWriteQueue(Context context) {
+	this.context = context;
+	resolver = context.getContentResolver();
+	HandlerThread thread = new HandlerThread(TAG,
+		Process.THREAD_PRIORITY_BACKGROUND);
+	thread.start();
+	handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queue a change to an item.  If there is already a change
+     * pending for the same item, the new values are merged into it.
+     *
+     * @param itemId the ID of the item to change
+     * @param values the columns to change, including
+     * {@link ToDoItem#MOD_TIME}
+     */
+    void update(long itemId, ContentValues values) {
+	synchronized (pending) {
+	    ContentValues queued = pending.get(itemId);
+	    if (queued == null)
+		pending.put(itemId, new ContentValues(values));
+	    else
+		queued.putAll(values);
+	    if (!flushScheduled) {
+		handler.postDelayed(flusher, FLUSH_DELAY);
+		flushScheduled = true;
+	    }
+	}
+    }
+
+    /** @return whether there are no changes waiting to be seen */
+    boolean isEmpty() {
+	synchronized (pending) {
+	    return pending.isEmpty() && written.isEmpty();
+	}
+    }
+
+    /**
+     * Get the changes to an item which the list does not show yet.
+     * Written changes are dropped once the list&rsquo;s modification
+     * time for the item shows that it has caught up with them.
+     *
+     * @param itemId the ID of the item
+     * @param modTime the item&rsquo;s modification time in the list
+     *
+     * @return the changed values, or {@code null} if none.
+     */
+    ContentValues getPendingValues(long itemId, long modTime) {
+	synchronized (pending) {
+	    WrittenChange change = written.get(itemId);
+	    if ((change != null) && (change.committedAt != 0) &&
+		    (change.modTime <= modTime)) {
+		written.remove(itemId);
+		change = null;
+	    }
+	    ContentValues queued = pending.get(itemId);
+	    if (queued == null)
+		return (change == null) ? null : new ContentValues(change.values);
+	    ContentValues values = (change == null)
+		? new ContentValues() : new ContentValues(change.values);
+	    values.putAll(queued);
+	    return values;
+	}
+    }
+
+    /**
+     * Called by the list adapters when a reloaded list is shown.
+     * Drops written changes for items which have not been rebound
+     * since they were committed a while ago.
+     */
+    void onReloaded() {
+	synchronized (pending) {
+	    if (written.isEmpty())
+		return;
+	    long cutoff = SystemClock.elapsedRealtime() - RELEASE_DELAY;
+	    Iterator<WrittenChange> it = written.values().iterator();
+	    while (it.hasNext()) {
+		WrittenChange change = it.next();
+		if ((change.committedAt != 0) && (change.committedAt < cutoff))
+		    it.remove();
+	    }
+	}
+    }
+
+    /**
+     * Write any pending changes now rather than waiting.
+     * This should be called when the list is paused, in case
+     * the process is killed before the delay is up.
+     */
+    void flushSoon() {
+	synchronized (pending) {
+	    if (pending.isEmpty())
+		return;
+	    handler.removeCallbacks(flusher);
+	    handler.post(flusher);
+	    flushScheduled = true;
+	}
+    }
+
+    /** Write all pending changes in one batch.  Runs on the handler thread. */
+    private void flush() {
+	ArrayList<ContentProviderOperation> batch;
+	Map<Long,WrittenChange> changes;
+	synchronized (pending) {
+	    flushScheduled = false;
+	    if (pending.isEmpty())
+		return;
+	    changes = new LinkedHashMap<Long,WrittenChange>(pending.size());
+	    batch = new ArrayList<ContentProviderOperation>(pending.size());
+	    for (Map.Entry<Long,ContentValues> entry : pending.entrySet()) {
+		WrittenChange change = new WrittenChange(entry.getValue());
+		changes.put(entry.getKey(), change);
+		batch.add(ContentProviderOperation.newUpdate(
+			ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
+				entry.getKey()))
+			.withValues(change.values).build());
+	    }
+	    written.putAll(changes);
+	    pending.clear();
+	}
+	Log.d(TAG, ".flush: writing changes to " + batch.size() + " items");
+	Exception failure = null;
+	try {
+	    resolver.applyBatch(ToDo.AUTHORITY, batch);
+	} catch (RemoteException rx) {
+	    failure = rx;
+	} catch (OperationApplicationException oax) {
+	    failure = oax;
+	} catch (RuntimeException rx) {
+	    // Such as an SQLiteException; don't let it kill the thread
+	    failure = rx;
+	}
+	synchronized (pending) {
+	    long now = SystemClock.elapsedRealtime();
+	    for (Map.Entry<Long,WrittenChange> entry : changes.entrySet()) {
+		if (failure == null)
+		    entry.getValue().committedAt = now;
+		else if (written.get(entry.getKey()) == entry.getValue())
+		    written.remove(entry.getKey());
+	    }
+	}
+	if (failure != null) {
+	    Log.e(TAG, "Unable to write item changes", failure);
+	    mainHandler.post(failureNotice);
+	    // Reload the list so it shows what is really in the database
+	    resolver.notifyChange(ToDoItem.CONTENT_URI, null);
+	}
+    }
+
+}
@@ -42,6 +42,7 @@ import android.database.SQLException;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.IBinder;
+import android.os.RemoteException;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -110,6 +111,9 @@ public class PalmImporterService extends IntentService implements
     /** todo.dat pre-file header (huh?) */
     public static final int MAGIC = 0xcafebabe;
 
+    /** The number of To Do items to write to the database in one transaction */
+    private static final int IMPORT_BATCH_SIZE = 100;
+
     /** The location of the todo.dat file */
     private File dataFile;
 
@@ -589,7 +593,8 @@ public class PalmImporterService extends IntentService implements
 	ImportType importType = (ImportType)
 		intent.getSerializableExtra(PALM_IMPORT_TYPE);
 
-	// Start the import
+	// Start the import, holding back change notifications until done
+	ToDoProvider.suspendNotifications(getContentResolver());
 	try {
 	    currentMode = OpMode.READING;
 	    readDataFile();
@@ -605,6 +610,14 @@ public class PalmImporterService extends IntentService implements
 	} catch (SQLException sqlx) {
 	    Log.e(LOG_TAG, "Error importing To Do items", sqlx);
 	    Toast.makeText(this, sqlx.getMessage(), Toast.LENGTH_LONG);
+	} catch (OperationApplicationException oax) {
+	    Log.e(LOG_TAG, "Error importing To Do items", oax);
+	    Toast.makeText(this, oax.getMessage(), Toast.LENGTH_LONG);
+	} catch (RemoteException rx) {
+	    Log.e(LOG_TAG, "Error importing To Do items", rx);
+	    Toast.makeText(this, rx.getMessage(), Toast.LENGTH_LONG);
+	} finally {
+	    ToDoProvider.resumeNotifications(getContentResolver());
 	}
     }
 
@@ -1251,7 +1264,8 @@ public class PalmImporterService extends IntentService implements
      *
      * @throws IllegalStateException if the Palm database has not been read.
      */
-    public void mergeToDos(ImportType importType) {
+    public void mergeToDos(ImportType importType)
+	throws RemoteException, OperationApplicationException {
 	if (!hasReadPalmDB)
 	    throw new IllegalStateException(
 		    "The To Do database file has not been read");
@@ -1290,10 +1304,17 @@ public class PalmImporterService extends IntentService implements
 
 	    ContentValues values = new ContentValues();
 	    ContentValues existingRecord = new ContentValues();
+	    // Item changes waiting to be written, and the ID's they use
+	    ArrayList<ContentProviderOperation> batch =
+		new ArrayList<ContentProviderOperation>(IMPORT_BATCH_SIZE);
+	    Set<Long> batchIDs = new HashSet<Long>();
 	    for (int i = 0; i < dataToDos.length; i++) {
 		values.clear();
 		// Set the ID and creation time of the new record
 		if (importType != ImportType.CLEAN) {
+		    // The existing item may still be waiting in the batch
+		    if (batchIDs.contains((long) dataToDos[i].ID))
+			flushBatch(resolver, batch, batchIDs);
 		    /*
 		     * Check whether a record with the same ID already exists.
 		     * for some import types we don't actually care what data
@@ -1326,8 +1347,10 @@ public class PalmImporterService extends IntentService implements
 				    categoryMap.get(dataToDos[i].categoryIndex).longName,
 				    dataToDos[i].description));
 			}
-			resolver.delete(ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
-				dataToDos[i].ID), null, null);
+			batch.add(ContentProviderOperation.newDelete(
+				ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
+					dataToDos[i].ID))
+				.withYieldAllowed(batch.isEmpty()).build());
 		    }
 		    // Fall through
 		case CLEAN:
@@ -1348,8 +1371,10 @@ public class PalmImporterService extends IntentService implements
 			}
 			values.put(ToDoItem.CREATE_TIME,
 				existingRecord.getAsLong(ToDoItem.CREATE_TIME));
-			resolver.delete(ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
-				dataToDos[i].ID), null, null);
+			batch.add(ContentProviderOperation.newDelete(
+				ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
+					dataToDos[i].ID))
+				.withYieldAllowed(batch.isEmpty()).build());
 			values.put(ToDoItem._ID, dataToDos[i].ID);
 		    } else {
 			if (dataToDos.length < 64) {
@@ -1511,16 +1536,36 @@ public class PalmImporterService extends IntentService implements
 				dataToDos[i].repeat.repeatUntil * 1000);
 		}
 
-		if (importType != ImportType.TEST)
-		    resolver.insert(ToDoItem.CONTENT_URI, values);
+		if (importType != ImportType.TEST) {
+		    batch.add(ContentProviderOperation.newInsert(
+			    ToDoItem.CONTENT_URI).withValues(values)
+			    .withYieldAllowed(batch.isEmpty()).build());
+		    batchIDs.add(values.getAsLong(ToDoItem._ID));
+		}
+		if (batch.size() >= IMPORT_BATCH_SIZE)
+		    flushBatch(resolver, batch, batchIDs);
 
 		importCount = 2 * dataCategories.length + dataToDos.length + i + 1;
 	    }
+	    flushBatch(resolver, batch, batchIDs);
 	} finally {
 	    StringEncryption.releaseGlobalEncryption();
 	}
     }
 
+    /**
+     * Write a batch of To Do item changes to the database
+     * in a single transaction, then clear the batch.
+     */
+    private void flushBatch(ContentResolver resolver,
+	    ArrayList<ContentProviderOperation> batch, Set<Long> batchIDs)
+		throws RemoteException, OperationApplicationException {
+	if (!batch.isEmpty())
+	    resolver.applyBatch(ToDo.AUTHORITY, batch);
+	batch.clear();
+	batchIDs.clear();
+    }
+
     /**
      * Called when the service is created.
      */
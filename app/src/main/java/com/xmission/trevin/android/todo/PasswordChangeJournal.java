@@ -0,0 +1,203 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import com.xmission.trevin.android.crypto.SHA256;
+import com.xmission.trevin.android.todo.ToDo.ToDoMetadata;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+/**
+ * Progress record for a password change, kept in the metadata table
+ * so that {@link PasswordChangeService} can pick up where it left off
+ * if the process dies partway through.  The journal is written in the
+ * same transaction as each batch of items, so it always agrees with
+ * the state of the database.
+ * <p>
+ * The stored value has the following format:
+ * <table>
+ * <tr><th>Bytes</th><th>Content</th></tr>
+ * <tr><td>1</td><td>Journal format version (1)</td></tr>
+ * <tr><td>1</td><td>Operation: {@link #OP_REKEY} or {@link #OP_ENCRYPT}</td></tr>
+ * <tr><td>8</td><td>The last item ID which has been committed,
+ *   in MSB order</td></tr>
+ * <tr><td>1</td><td>Length of the old key fingerprint</td></tr>
+ * <tr><td>?</td><td>SHA256 digest of the old password hash,
+ *   or nothing if there was no old password</td></tr>
+ * <tr><td>?</td><td>The new password hash, in the format
+ *   used by {@link StringEncryption#storePassword}</td></tr>
+ * </table>
+ */
+class PasswordChangeJournal {
+
+    private static final String TAG = "PasswordChangeJournal";
+
+    /** Name of the journal entry in the metadata table */
+    static final String[] METADATA_JOURNAL = {
+	"PasswordChangeService.Journal" };
+
+    private static final String[] METADATA_PROJECTION = { ToDoMetadata.VALUE };
+
+    private static final byte VERSION = 1;
+
+    /** Re-encrypting items from an old password to a new one */
+    static final int OP_REKEY = 1;
+
+    /** Encrypting plain private items with a new password */
+    static final int OP_ENCRYPT = 2;
+
+    /** The operation in progress */
+    final int operation;
+
+    /** Fingerprint of the old password hash; empty if none */
+    private final byte[] oldFingerprint;
+
+    /** The new password hash */
+    final byte[] newPasswordHash;
+
+    /** The ID of the last item which has been committed */
+    long lastId;
+
+    /**
+     * Start a new journal.
+     *
+     * @param operation {@link #OP_REKEY} or {@link #OP_ENCRYPT}
+     * @param oldPasswordHash the password hash currently stored
+     * in the database, or {@code null} if there is none
+     * @param newPasswordHash the password hash which will
+     * replace it when the operation is finished
+     */
+    PasswordChangeJournal(int operation, byte[] oldPasswordHash,
+	    byte[] newPasswordHash) {
+	this(operation, fingerprint(oldPasswordHash), newPasswordHash, 0);
+    }
+
+    private PasswordChangeJournal(int operation, byte[] oldFingerprint,
+	    byte[] newPasswordHash, long lastId) {
+	this.operation = operation;
+	this.oldFingerprint = oldFingerprint;
+	this.newPasswordHash = newPasswordHash;
+	this.lastId = lastId;
+    }
+
+    /** @return the fingerprint of a password hash */
+    private static byte[] fingerprint(byte[] passwordHash) {
+	if (passwordHash == null)
+	    return new byte[0];
+	MessageDigest md = new SHA256.Digest();
+	return md.digest(passwordHash);
+    }
+
+    /**
+     * @return whether this journal was started
+     * from the given old password hash
+     */
+    boolean startedFrom(byte[] oldPasswordHash) {
+	return Arrays.equals(oldFingerprint, fingerprint(oldPasswordHash));
+    }
+
+    /** @return the journal as it should be stored in the database */
+    private byte[] toBytes() {
+	ByteBuffer bb = ByteBuffer.allocate(11 + oldFingerprint.length
+		+ newPasswordHash.length).order(ByteOrder.BIG_ENDIAN);
+	bb.put(VERSION);
+	bb.put((byte) operation);
+	bb.putLong(lastId);
+	bb.put((byte) oldFingerprint.length);
+	bb.put(oldFingerprint);
+	bb.put(newPasswordHash);
+	return bb.array();
+    }
+
+    /** @return the values for inserting the journal into the database */
+    ContentValues toValues() {
+	ContentValues values = new ContentValues();
+	values.put(ToDoMetadata.NAME, METADATA_JOURNAL[0]);
+	values.put(ToDoMetadata.VALUE, toBytes());
+	return values;
+    }
+
+    /**
+     * @return an operation which records the current {@link #lastId},
+     * to be applied in the same batch as the items up to that ID.
+     */
+    ContentProviderOperation checkpoint() {
+	return ContentProviderOperation.newUpdate(ToDoMetadata.CONTENT_URI)
+		.withSelection(ToDoMetadata.NAME + " = ?", METADATA_JOURNAL)
+		.withValue(ToDoMetadata.VALUE, toBytes()).build();
+    }
+
+    /** @return an operation which removes the journal */
+    static ContentProviderOperation delete() {
+	return ContentProviderOperation.newDelete(ToDoMetadata.CONTENT_URI)
+		.withSelection(ToDoMetadata.NAME + " = ?", METADATA_JOURNAL)
+		.build();
+    }
+
+    /**
+     * Read the journal of an interrupted password change.
+     *
+     * @return the journal, or {@code null} if there is none
+     * or it cannot be read.
+     */
+    static PasswordChangeJournal read(ContentResolver resolver) {
+	byte[] value = null;
+	Cursor c = resolver.query(ToDoMetadata.CONTENT_URI,
+		METADATA_PROJECTION, ToDoMetadata.NAME + " = ?",
+		METADATA_JOURNAL, null);
+	try {
+	    if (c.moveToFirst())
+		value = c.getBlob(c.getColumnIndex(ToDoMetadata.VALUE));
+	} finally {
+	    c.close();
+	}
+	if (value == null)
+	    return null;
+	ByteBuffer bb = ByteBuffer.wrap(value).order(ByteOrder.BIG_ENDIAN);
+	try {
+	    if (bb.get() != VERSION) {
+		Log.w(TAG, "Unsupported journal version " + value[0]);
+		return null;
+	    }
+	    int operation = bb.get();
+	    long lastId = bb.getLong();
+	    byte[] oldFingerprint = new byte[bb.get() & 0xff];
+	    bb.get(oldFingerprint);
+	    byte[] newHash = new byte[bb.remaining()];
+	    bb.get(newHash);
+	    return new PasswordChangeJournal(
+		    operation, oldFingerprint, newHash, lastId);
+	} catch (BufferUnderflowException bux) {
+	    Log.w(TAG, "Truncated password change journal");
+	    return null;
+	}
+    }
+
+}
@@ -34,8 +34,14 @@
 package com.xmission.trevin.android.todo;
 
 import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
 
 import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+import com.xmission.trevin.android.todo.ToDo.ToDoMetadata;
 
 import android.app.IntentService;
 import android.content.*;
@@ -75,7 +81,7 @@ public class PasswordChangeService extends IntentService
     /**
      * The columns we are interested in from the item table
      */
-    private static final String[] ITEM_PROJECTION = new String[] {
+    static final String[] ITEM_PROJECTION = new String[] {
             ToDoItem._ID,
             ToDoItem.DESCRIPTION,
             ToDoItem.NOTE,
@@ -84,7 +90,7 @@ public class PasswordChangeService extends IntentService
 
     /** The current mode of operation */
     public enum OpMode {
-	DECRYPTING, ENCRYPTING
+	DECRYPTING, ENCRYPTING, REENCRYPTING
     };
     private OpMode currentMode = OpMode.DECRYPTING;
 
@@ -118,6 +124,8 @@ public class PasswordChangeService extends IntentService
 	    return getString(R.string.ProgressMessageDecrypting);
 	case ENCRYPTING:
 	    return getString(R.string.ProgressMessageEncrypting);
+	case REENCRYPTING:
+	    return getString(R.string.ProgressMessageReencrypting);
 	default:
 	    return "";
 	}
@@ -129,6 +137,9 @@ public class PasswordChangeService extends IntentService
     /** @return the number of entries changed so far */
     public int getChangedCount() { return numChanged; }
 
+    /** Number of items to re-encrypt in each transaction */
+    private static final int REKEY_BATCH_SIZE = 100;
+
     static final java.util.Random RANDOM = new java.util.Random();
 
     /** Called when an activity requests a password change */
@@ -145,8 +156,12 @@ public class PasswordChangeService extends IntentService
 	int decrypTotal = 0;
 	StringEncryption globalEncryption =
 	    StringEncryption.holdGlobalEncryption();
+	// Hold back change notifications until all items are done
+	ToDoProvider.suspendNotifications(resolver);
 	try {
 	    StringEncryption encryptor = new StringEncryption();
+	    // Whether we are finishing an interrupted encryption
+	    boolean resuming = false;
 	    if (oldPassword != null) {
 		if (!encryptor.hasPassword(resolver)) {
 		    Toast.makeText(this, R.string.ToastBadPassword,
@@ -159,6 +174,15 @@ public class PasswordChangeService extends IntentService
 			    Toast.LENGTH_LONG);
 		    return;
 		}
+		if (newPassword != null) {
+		    // Changing from one password to another
+		    rekey(resolver, encryptor, newPassword);
+		    if (globalEncryption.hasKey()) {
+			globalEncryption.setPassword(newPassword);
+			globalEncryption.checkPassword(resolver);
+		    }
+		    return;
+		}
 		// Decrypt all entries
 		c = resolver.query(
 			ToDoItem.CONTENT_URI, ITEM_PROJECTION,
@@ -197,18 +221,50 @@ public class PasswordChangeService extends IntentService
 		encryptor.forgetPassword();
 	    } else {
 		if (encryptor.hasPassword(resolver)) {
-		    Toast.makeText(this, R.string.ToastBadPassword,
-			    Toast.LENGTH_LONG);
-		    return;
+		    /*
+		     * If an earlier request to set this password was
+		     * interrupted after storing the password hash,
+		     * finish encrypting the rest of the items.
+		     */
+		    byte[] storedHash = StringEncryption.readPasswordHash(resolver);
+		    PasswordChangeJournal journal =
+			PasswordChangeJournal.read(resolver);
+		    if (newPassword != null)
+			encryptor.setPassword(newPassword);
+		    if ((newPassword == null) || (journal == null) ||
+			    (journal.operation != PasswordChangeJournal.OP_ENCRYPT) ||
+			    !Arrays.equals(journal.newPasswordHash, storedHash) ||
+			    !encryptor.checkPassword(storedHash)) {
+			Toast.makeText(this, R.string.ToastBadPassword,
+				Toast.LENGTH_LONG);
+			return;
+		    }
+		    Log.i(TAG, ".onHandleIntent: Resuming an interrupted encryption");
+		    resuming = true;
 		}
 	    }
 
 	    if (newPassword != null) {
 		currentMode = OpMode.ENCRYPTING;
-		Log.d(TAG, ".onHandleIntent: Storing the new password hash");
 		encryptor.setPassword(newPassword);
-		// Set the new password
-		encryptor.storePassword(resolver);
+		if (!resuming) {
+		    Log.d(TAG, ".onHandleIntent: Storing the new password hash");
+		    // Set the new password, and note that
+		    // the items still need to be encrypted
+		    ContentValues hashValues = encryptor.getPasswordHashValues();
+		    ArrayList<ContentProviderOperation> ops =
+			new ArrayList<ContentProviderOperation>(2);
+		    ops.add(ContentProviderOperation.newInsert(
+			    ToDoMetadata.CONTENT_URI)
+			    .withValues(hashValues).build());
+		    ops.add(ContentProviderOperation.newInsert(
+			    ToDoMetadata.CONTENT_URI)
+			    .withValues(new PasswordChangeJournal(
+				    PasswordChangeJournal.OP_ENCRYPT, null,
+				    hashValues.getAsByteArray(ToDoMetadata.VALUE))
+				    .toValues()).build());
+		    resolver.applyBatch(ToDo.AUTHORITY, ops);
+		}
 
 		// Encrypt all entries
 		c = resolver.query(ToDoItem.CONTENT_URI, ITEM_PROJECTION,
@@ -244,6 +300,11 @@ public class PasswordChangeService extends IntentService
 		    Log.d(TAG, ".onHandleIntent: encrypted row "
 			    + (numChanged - decrypTotal));
 		}
+		c.close();
+		c = null;
+		resolver.delete(ToDoMetadata.CONTENT_URI,
+			ToDoMetadata.NAME + " = ?",
+			PasswordChangeJournal.METADATA_JOURNAL);
 		if (globalEncryption.hasKey()) {
 		    globalEncryption.setPassword(newPassword);
 		    globalEncryption.checkPassword(resolver);
@@ -258,11 +319,163 @@ public class PasswordChangeService extends IntentService
 		c.close();
 	    Log.e(TAG, "Error changing the password!", gsx);
 	    Toast.makeText(this, gsx.getMessage(), Toast.LENGTH_LONG);
+	} catch (RemoteException rx) {
+	    Log.e(TAG, "Error changing the password!", rx);
+	    Toast.makeText(this, rx.getMessage(), Toast.LENGTH_LONG);
+	} catch (OperationApplicationException oax) {
+	    Log.e(TAG, "Error changing the password!", oax);
+	    Toast.makeText(this, oax.getMessage(), Toast.LENGTH_LONG);
 	} finally {
+	    ToDoProvider.resumeNotifications(resolver);
 	    StringEncryption.releaseGlobalEncryption();
 	}
     }
 
+    /**
+     * Re-encrypt all encrypted items from the old password to the
+     * new one.  Each item is read once, decrypted with the old key,
+     * encrypted with the new key, and written once, so the plain text
+     * never reaches the database.  The encryption is done by a pool
+     * of worker threads while this thread reads the items and writes
+     * the results in order.  The items are written in batches,
+     * each in its own transaction; the password hash is replaced in
+     * the same transaction as the last batch.
+     * <p>
+     * Items are processed in order of their ID, and each batch
+     * records the last ID in a {@link PasswordChangeJournal}.
+     * If an earlier attempt with the same passwords was interrupted,
+     * this continues after the last committed item.
+     *
+     * @param oldEncryptor an encryption object holding the
+     * (verified) old password
+     * @param newPassword the new password
+     */
+    private void rekey(ContentResolver resolver,
+	    final StringEncryption oldEncryptor, char[] newPassword)
+		throws GeneralSecurityException, RemoteException,
+		OperationApplicationException {
+	currentMode = OpMode.REENCRYPTING;
+	final StringEncryption newEncryptor = new StringEncryption();
+	newEncryptor.setPassword(newPassword);
+	byte[] oldHash = StringEncryption.readPasswordHash(resolver);
+	PasswordChangeJournal journal = PasswordChangeJournal.read(resolver);
+	if ((journal != null) &&
+		(journal.operation == PasswordChangeJournal.OP_REKEY) &&
+		journal.startedFrom(oldHash)) {
+	    // Some of the items already use the new key
+	    if (!newEncryptor.checkPassword(journal.newPasswordHash))
+		throw new InvalidKeyException("The new password does not"
+			+ " match the interrupted password change");
+	    Log.i(TAG, ".rekey: Resuming after item " + journal.lastId);
+	} else {
+	    if (journal != null) {
+		Log.w(TAG, ".rekey: Discarding a stale journal");
+		ArrayList<ContentProviderOperation> cleanup =
+		    new ArrayList<ContentProviderOperation>(1);
+		cleanup.add(PasswordChangeJournal.delete());
+		resolver.applyBatch(ToDo.AUTHORITY, cleanup);
+	    }
+	    newEncryptor.addSalt();
+	    journal = new PasswordChangeJournal(PasswordChangeJournal.OP_REKEY,
+		    oldHash, newEncryptor.getPasswordHashValues()
+		    .getAsByteArray(ToDoMetadata.VALUE));
+	    resolver.insert(ToDoMetadata.CONTENT_URI, journal.toValues());
+	}
+	final String idColumnName =
+	    ToDoProvider.TODO_TABLE_NAME + "." + ToDoItem._ID;
+	String[] afterArgs = { Long.toString(journal.lastId) };
+	changeTarget = ToDoProvider.countItems(resolver,
+		ToDoItem.PRIVATE + " > 1", null);
+	numChanged = ToDoProvider.countItems(resolver, ToDoItem.PRIVATE
+		+ " > 1 AND " + idColumnName + " <= ?", afterArgs);
+	Cursor c = resolver.query(ToDoItem.CONTENT_URI, ITEM_PROJECTION,
+		ToDoItem.PRIVATE + " > 1 AND " + idColumnName + " > ?",
+		afterArgs, idColumnName);
+	ArrayList<ContentProviderOperation> batch =
+	    new ArrayList<ContentProviderOperation>(REKEY_BATCH_SIZE + 3);
+	CryptoWorkQueue<ContentProviderOperation> workers =
+	    new CryptoWorkQueue<ContentProviderOperation>();
+	// The ID's of the items given to the workers, in order
+	ArrayDeque<Long> pendingIds = new ArrayDeque<Long>();
+	try {
+	    Log.d(TAG, ".rekey: Re-encrypting " + c.getCount() + " items");
+	    int idColumn = c.getColumnIndex(ToDoItem._ID);
+	    int descriptionColumn = c.getColumnIndex(ToDoItem.DESCRIPTION);
+	    int noteColumn = c.getColumnIndex(ToDoItem.NOTE);
+	    while (c.moveToNext()) {
+		final long itemId = c.getLong(idColumn);
+		final byte[] description = c.getBlob(descriptionColumn);
+		final byte[] note =
+		    c.isNull(noteColumn) ? null : c.getBlob(noteColumn);
+		pendingIds.add(itemId);
+		boolean full = workers.add(
+			new Callable<ContentProviderOperation>() {
+		    @Override
+		    public ContentProviderOperation call()
+			    throws GeneralSecurityException {
+			ContentValues values = new ContentValues();
+			values.put(ToDoItem.DESCRIPTION, newEncryptor.encrypt(
+				oldEncryptor.decryptBytes(description)));
+			if (note != null)
+			    values.put(ToDoItem.NOTE, newEncryptor.encrypt(
+				    oldEncryptor.decryptBytes(note)));
+			return ContentProviderOperation.newUpdate(
+				ContentUris.withAppendedId(
+					ToDoItem.CONTENT_URI, itemId))
+				.withValues(values).build();
+		    }
+		});
+		if (full)
+		    addToBatch(resolver, batch, journal,
+			    workers.take(), pendingIds.poll());
+	    }
+	    while (!workers.isEmpty())
+		addToBatch(resolver, batch, journal,
+			workers.take(), pendingIds.poll());
+	} finally {
+	    workers.shutdown();
+	    c.close();
+	}
+
+	// Swap the password hash along with the last of the items
+	int remaining = batch.size();
+	batch.add(ContentProviderOperation.newDelete(ToDoMetadata.CONTENT_URI)
+		.withSelection(ToDoMetadata.NAME + " = ?",
+			StringEncryption.METADATA_PASSWORD_HASH).build());
+	ContentValues hashValues = new ContentValues();
+	hashValues.put(ToDoMetadata.NAME,
+		StringEncryption.METADATA_PASSWORD_HASH[0]);
+	hashValues.put(ToDoMetadata.VALUE, journal.newPasswordHash);
+	batch.add(ContentProviderOperation.newInsert(ToDoMetadata.CONTENT_URI)
+		.withValues(hashValues).build());
+	batch.add(PasswordChangeJournal.delete());
+	resolver.applyBatch(ToDo.AUTHORITY, batch);
+	numChanged += remaining;
+	Log.d(TAG, ".rekey: Re-encrypted " + numChanged + " items");
+	oldEncryptor.forgetPassword();
+	newEncryptor.forgetPassword();
+    }
+
+    /**
+     * Add a re-encrypted item to the batch.  When the batch is full,
+     * write it along with a journal checkpoint.
+     */
+    private void addToBatch(ContentResolver resolver,
+	    ArrayList<ContentProviderOperation> batch,
+	    PasswordChangeJournal journal,
+	    ContentProviderOperation op, long itemId)
+		throws RemoteException, OperationApplicationException {
+	batch.add(op);
+	journal.lastId = itemId;
+	if (batch.size() >= REKEY_BATCH_SIZE) {
+	    int count = batch.size();
+	    batch.add(journal.checkpoint());
+	    resolver.applyBatch(ToDo.AUTHORITY, batch);
+	    numChanged += count;
+	    batch.clear();
+	}
+    }
+
     /**
      * Called when the service is created.
      */
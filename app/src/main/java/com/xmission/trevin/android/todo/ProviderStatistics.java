@@ -0,0 +1,227 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.io.PrintWriter;
+
+import android.database.CrossProcessCursorWrapper;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+/**
+ * Collects the number of calls, rows, and latency of content provider
+ * operations, broken down by operation and type of URI.
+ * Recording a call only updates preallocated arrays,
+ * so this is cheap enough to leave enabled all the time.
+ */
+class ProviderStatistics {
+
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+
+    private static final String[] OPERATION_NAMES = {
+	"query", "insert", "update", "delete"
+    };
+
+    /**
+     * Number of latency histogram buckets.  Each bucket covers
+     * twice the time of the one before; the last bucket holds
+     * everything longer.
+     */
+    private static final int BUCKETS = 14;
+
+    /** Upper limit of the first histogram bucket, in microseconds */
+    private static final long FIRST_BUCKET_MICROS = 128;
+
+    /** Names of the URI types, indexed by URI match code */
+    private final String[] uriNames;
+
+    private final long[][] calls;
+    private final long[][] rows;
+    private final long[][] totalNanos;
+    private final long[][] maxNanos;
+    private final long[][][] histogram;
+
+    /** When the statistics were last reset */
+    private long startTime = SystemClock.elapsedRealtime();
+
+    /**
+     * @param uriNames names of the URI types, indexed by
+     * the match codes that will be passed to {@link #record}.
+     */
+    ProviderStatistics(String[] uriNames) {
+	this.uriNames = uriNames;
+	calls = new long[OPERATION_NAMES.length][uriNames.length];
+	rows = new long[OPERATION_NAMES.length][uriNames.length];
+	totalNanos = new long[OPERATION_NAMES.length][uriNames.length];
+	maxNanos = new long[OPERATION_NAMES.length][uriNames.length];
+	histogram = new long[OPERATION_NAMES.length][uriNames.length][BUCKETS];
+    }
+
+    /**
+     * Record a completed operation.
+     *
+     * @param operation one of {@link #QUERY}, {@link #INSERT},
+     * {@link #UPDATE}, or {@link #DELETE}
+     * @param uriType the URI match code
+     * @param startNanos the value of
+     * {@link SystemClock#elapsedRealtimeNanos()} when the operation began
+     * @param rowCount the number of rows returned or changed,
+     * or -1 if it is not known yet
+     */
+    void record(int operation, int uriType, long startNanos, int rowCount) {
+	long elapsed = SystemClock.elapsedRealtimeNanos() - startNanos;
+	if ((uriType < 0) || (uriType >= uriNames.length))
+	    return;
+	int bucket = 64 - Long.numberOfLeadingZeros(
+		elapsed / 1000 / FIRST_BUCKET_MICROS);
+	if (bucket >= BUCKETS)
+	    bucket = BUCKETS - 1;
+	synchronized (this) {
+	    calls[operation][uriType]++;
+	    if (rowCount > 0)
+		rows[operation][uriType] += rowCount;
+	    totalNanos[operation][uriType] += elapsed;
+	    if (elapsed > maxNanos[operation][uriType])
+		maxNanos[operation][uriType] = elapsed;
+	    histogram[operation][uriType][bucket]++;
+	}
+    }
+
+    /**
+     * Wrap the cursor returned by a query so that the query is
+     * recorded when the caller first counts its rows.  A query
+     * cursor does not run its statement until it fills its first
+     * window, which counting does, so the latency recorded then
+     * includes the time SQLite spent finding the rows.  A cursor
+     * closed without being counted is recorded with an unknown
+     * row count.
+     *
+     * @param startNanos the value of
+     * {@link SystemClock#elapsedRealtimeNanos()} when the query began
+     */
+    Cursor recordQuery(Cursor cursor, int uriType, long startNanos) {
+	if (cursor == null) {
+	    record(QUERY, uriType, startNanos, 0);
+	    return null;
+	}
+	if ((uriType < 0) || (uriType >= uriNames.length))
+	    return cursor;
+	return new CountingCursor(cursor, uriType, startNanos);
+    }
+
+    /** Records a query when its rows are first counted */
+    private class CountingCursor extends CrossProcessCursorWrapper {
+	private final int uriType;
+	private final long startNanos;
+	private boolean recorded = false;
+
+	CountingCursor(Cursor cursor, int uriType, long startNanos) {
+	    super(cursor);
+	    this.uriType = uriType;
+	    this.startNanos = startNanos;
+	}
+
+	@Override
+	public int getCount() {
+	    int count = super.getCount();
+	    if (!recorded) {
+		recorded = true;
+		record(QUERY, uriType, startNanos, count);
+	    }
+	    return count;
+	}
+
+	@Override
+	public void close() {
+	    if (!recorded) {
+		recorded = true;
+		record(QUERY, uriType, startNanos, -1);
+	    }
+	    super.close();
+	}
+    }
+
+    /** Clear all statistics */
+    synchronized void reset() {
+	for (int op = 0; op < OPERATION_NAMES.length; op++) {
+	    for (int type = 0; type < uriNames.length; type++) {
+		calls[op][type] = 0;
+		rows[op][type] = 0;
+		totalNanos[op][type] = 0;
+		maxNanos[op][type] = 0;
+		for (int b = 0; b < BUCKETS; b++)
+		    histogram[op][type][b] = 0;
+	    }
+	}
+	startTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Write the statistics for every operation and URI type
+     * that has been called at least once.
+     */
+    synchronized void dump(PrintWriter pw) {
+	pw.print("Provider statistics for the last ");
+	pw.print((SystemClock.elapsedRealtime() - startTime) / 1000);
+	pw.println(" seconds:");
+	pw.print("  Latency buckets (ms): ");
+	for (int b = 0; b < BUCKETS - 1; b++) {
+	    pw.print('<');
+	    pw.print(formatMillis((FIRST_BUCKET_MICROS << b) * 1000));
+	    pw.print(' ');
+	}
+	pw.println("more");
+	for (int op = 0; op < OPERATION_NAMES.length; op++) {
+	    for (int type = 0; type < uriNames.length; type++) {
+		long n = calls[op][type];
+		if (n == 0)
+		    continue;
+		pw.print("  ");
+		pw.print(OPERATION_NAMES[op]);
+		pw.print(' ');
+		pw.print(uriNames[type]);
+		pw.print(": calls=");
+		pw.print(n);
+		pw.print(" rows=");
+		pw.print(rows[op][type]);
+		pw.print(" avg=");
+		pw.print(formatMillis(totalNanos[op][type] / n));
+		pw.print("ms max=");
+		pw.print(formatMillis(maxNanos[op][type]));
+		pw.println("ms");
+		pw.print("    histogram:");
+		for (int b = 0; b < BUCKETS; b++) {
+		    pw.print(' ');
+		    pw.print(histogram[op][type][b]);
+		}
+		pw.println();
+	    }
+	}
+    }
+
+    /** Format a time in nanoseconds as milliseconds */
+    private static String formatMillis(long nanos) {
+	return String.format("%.3f", nanos / 1000000.0);
+    }
+
+}
@@ -53,10 +53,13 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.*;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.*;
-import javax.crypto.spec.SecretKeySpec;
 
 import com.xmission.trevin.android.crypto.*;
 import com.xmission.trevin.android.todo.ToDo.ToDoMetadata;
@@ -166,6 +169,111 @@ public class StringEncryption {
     /** The encryption key */
     private byte[] key = null;
 
+    /**
+     * The stored password hash which {@link #key} was checked against
+     * or generated for, used to find it in the key cache.
+     */
+    private ByteBuffer keyVerifier = null;
+
+    /**
+     * Ciphers initialized with the current {@link #key},
+     * kept so that the key schedule doesn't have to be
+     * recomputed for every string.  A cipher is taken out
+     * of its pool while in use, so different threads never
+     * share one.  Access must be synchronized on the pool.
+     */
+    private final ArrayDeque<CipherBackend.KeyedCipher> encryptors =
+	new ArrayDeque<CipherBackend.KeyedCipher>();
+    private final ArrayDeque<CipherBackend.KeyedCipher> decryptors =
+	new ArrayDeque<CipherBackend.KeyedCipher>();
+
+    /**
+     * Incremented whenever the key changes, so that ciphers
+     * initialized with an old key are not returned to the pools.
+     */
+    private volatile int keyGeneration = 0;
+
+    /** Maximum number of idle ciphers to keep for each mode */
+    private static final int CIPHER_POOL_SIZE = 4;
+
+    /** Maximum number of derived keys to keep in the cache */
+    private static final int KEY_CACHE_SIZE = 4;
+
+    /** How long a derived key may be kept in the cache, in milliseconds */
+    private static final long KEY_CACHE_TIMEOUT = 15 * 60 * 1000L;
+
+    /**
+     * A derived key, a tag for the password it was derived from,
+     * and the time it was generated.  The tag is an HMAC of the
+     * password keyed by the derived key itself, so it tells nothing
+     * about the password to anyone who does not already have the key.
+     */
+    private static class CachedKey {
+	final byte[] key;
+	final byte[] passwordTag;
+	final long time;
+	CachedKey(byte[] key, byte[] passwordTag) {
+	    this.key = key;
+	    this.passwordTag = passwordTag;
+	    time = System.currentTimeMillis();
+	}
+	/** Zero the key and tag when the entry is removed */
+	void wipe() {
+	    Arrays.fill(key, (byte) 0);
+	    Arrays.fill(passwordTag, (byte) 0);
+	}
+    }
+
+    /**
+     * Keys derived from passwords in this process, so that new
+     * encryption objects with the same password don't have to
+     * repeat the key derivation.  The keys are indexed by the
+     * password hash stored in the database, which already holds the
+     * salt, key length and iteration count; nothing derived from the
+     * password alone is kept.  Entries are zeroed when they are removed.
+     * Access to this map must be synchronized on it.
+     */
+    private static final LinkedHashMap<ByteBuffer,CachedKey> keyCache =
+	new LinkedHashMap<ByteBuffer,CachedKey>(KEY_CACHE_SIZE * 2, 0.75f, true) {
+	    @Override
+	    protected boolean removeEldestEntry(
+		    Map.Entry<ByteBuffer,CachedKey> eldest) {
+		if (size() <= KEY_CACHE_SIZE)
+		    return false;
+		eldest.getValue().wipe();
+		return true;
+	    }
+    };
+
+    /** Maximum number of decrypted descriptions to keep */
+    private static final int PLAINTEXT_CACHE_SIZE = 256;
+
+    /** A decrypted description and the modification time of its item */
+    private static class CachedText {
+	final long modTime;
+	final String text;
+	CachedText(long modTime, String text) {
+	    this.modTime = modTime;
+	    this.text = text;
+	}
+    }
+
+    /**
+     * Recently decrypted item descriptions, indexed by item ID.
+     * An entry is only used if the item&rsquo;s modification time
+     * still matches, so an edited item is always decrypted again.
+     * This is cleared whenever the key changes.
+     * Access to this map must be synchronized on it.
+     */
+    private final LinkedHashMap<Long,CachedText> plaintextCache =
+	new LinkedHashMap<Long,CachedText>(32, 0.75f, true) {
+	    @Override
+	    protected boolean removeEldestEntry(
+		    Map.Entry<Long,CachedText> eldest) {
+		return size() > PLAINTEXT_CACHE_SIZE;
+	    }
+    };
+
     /** Metadata projection fields */
     private final static String[] METADATA_PROJECTION = { ToDoMetadata.VALUE };
 
@@ -173,20 +281,28 @@ public class StringEncryption {
     final static String[] METADATA_PASSWORD_HASH = {
 	    "StringEncryption.HashedPassword" };
 
-    private final static String[] COUNT_PROJECTION = { ToDo.ToDoItem._ID };
-
     /** @return whether the encryption key has been set */
     public boolean hasKey() { return key != null; }
 
     /**
      * Clear the password and key.  This should be called
      * when the user chooses to hide private records.
+     * The key is also removed from the key cache.
      */
     public void forgetPassword() {
+	discardCiphers();
 	if (key != null) {
 	    Arrays.fill(key, (byte) 0);
 	    key = null;
 	}
+	if (keyVerifier != null) {
+	    synchronized (keyCache) {
+		CachedKey cached = keyCache.remove(keyVerifier);
+		if (cached != null)
+		    cached.wipe();
+	    }
+	    keyVerifier = null;
+	}
 	salt = null;
 	if (userPassword != null) {
 	    Arrays.fill(userPassword, (char) 0);
@@ -221,6 +337,7 @@ public class StringEncryption {
     public void setPassword(char[] password) {
 	userPassword = new char[password.length];
 	System.arraycopy(password, 0, userPassword, 0, password.length);
+	discardCiphers();
 	if (key != null) {
 	    Arrays.fill(key, (byte) 0);
 	    key = null;
@@ -233,6 +350,7 @@ public class StringEncryption {
     public void addSalt() {
 	salt = new byte[SALT_LENGTH];
 	RAND.nextBytes(salt);
+	discardCiphers();
 	if (key != null) {
 	    Arrays.fill(key, (byte) 0);
 	    key = null;
@@ -260,22 +378,31 @@ public class StringEncryption {
      */
     public boolean checkPassword(ContentResolver resolver)
 		throws GeneralSecurityException {
-	byte[] hashedPassword = null;
+	byte[] hashedPassword = readPasswordHash(resolver);
+	if (hashedPassword == null)
+	    throw new IllegalStateException(
+		    "checkPassword(resolver) called with no password in the database");
+	return checkPassword(hashedPassword);
+    }
+
+    /**
+     * Read the hashed password from the database.
+     *
+     * @return the stored password hash, or {@code null} if
+     * no password has been set.
+     */
+    static byte[] readPasswordHash(ContentResolver resolver) {
 	Cursor c = resolver.query(
 		ToDoMetadata.CONTENT_URI, METADATA_PROJECTION,
 		ToDoMetadata.NAME + " = ?", METADATA_PASSWORD_HASH, null);
 	try {
-	    if (c.moveToFirst()) {
-		hashedPassword = c.getBlob(c.getColumnIndex(ToDoMetadata.VALUE));
-	    } else {
-		throw new IllegalStateException(
-			"checkPassword(resolver) called with no password in the database");
-	    }
+	    if (c.moveToFirst())
+		return c.getBlob(c.getColumnIndex(ToDoMetadata.VALUE));
+	    return null;
 	}
 	finally {
 	    c.close();
 	}
-	return checkPassword(hashedPassword);
     }
 
     /**
@@ -304,6 +431,11 @@ public class StringEncryption {
 	    throw new UnrecoverableKeyException("Invalid password hash");
 	}
 
+	// Use the key from an earlier successful check if we have one
+	ByteBuffer verifier = ByteBuffer.wrap(hashedPassword.clone());
+	if (useCachedKey(verifier))
+	    return true;
+
 	// Tentatively generate a key from the assumed password
 	generateKey();
 
@@ -312,10 +444,13 @@ public class StringEncryption {
 	md.update(hashedPassword, 0, hLen);
 	md.update(key);
 	byte[] hash = md.digest();
-	if (Arrays.equals(storedHash, hash))
+	if (Arrays.equals(storedHash, hash)) {
+	    cacheKey(verifier);
 	    return true;
+	}
 
 	// If it does not match, discard the key and salt we got from the input.
+	discardCiphers();
 	Arrays.fill(key, (byte) 0);
 	key = null;
 	Arrays.fill(salt, (byte) 0);
@@ -348,6 +483,16 @@ public class StringEncryption {
      */
     public void storePassword(ContentResolver resolver)
 		throws GeneralSecurityException {
+	resolver.insert(ToDoMetadata.CONTENT_URI, getPasswordHashValues());
+    }
+
+    /**
+     * Generate the metadata row holding the hashed password, in the
+     * format described for {@link #storePassword}.  This allows the
+     * hash to be written as part of a larger batch of changes.
+     */
+    ContentValues getPasswordHashValues()
+		throws GeneralSecurityException {
 	if (key == null) {
 	    if (salt == null)
 		addSalt();
@@ -372,10 +517,12 @@ public class StringEncryption {
 	System.arraycopy(salt, 0, hash2, header.length, salt.length);
 	System.arraycopy(hash, 0, hash2, header.length + salt.length, hash.length);
 
+	cacheKey(ByteBuffer.wrap(hash2.clone()));
+
 	ContentValues values = new ContentValues();
 	values.put(ToDoMetadata.NAME, METADATA_PASSWORD_HASH[0]);
 	values.put(ToDoMetadata.VALUE, hash2);
-	resolver.insert(ToDoMetadata.CONTENT_URI, values);
+	return values;
     }
 
     /**
@@ -385,16 +532,12 @@ public class StringEncryption {
      * before the old password is removed!
      */
     public void removePassword(ContentResolver resolver) {
-	Cursor c = resolver.query(ToDo.ToDoItem.CONTENT_URI, COUNT_PROJECTION,
-		ToDo.ToDoItem.PRIVATE + " > 1", null, null);
-	try {
-	    if (c.moveToFirst())
-		// There are encrypted records!
-		throw new IllegalStateException(c.getInt(c.getColumnIndex(
-			ToDo.ToDoItem._COUNT)) + " records are still encrypted");
-	} finally {
-	    c.close();
-	}
+	int count = ToDoProvider.countItems(resolver,
+		ToDo.ToDoItem.PRIVATE + " > 1", null);
+	if (count > 0)
+	    // There are encrypted records!
+	    throw new IllegalStateException(count
+		    + " records are still encrypted");
 	resolver.delete(ToDoMetadata.CONTENT_URI,
 		ToDoMetadata.NAME + " = ?", METADATA_PASSWORD_HASH);
     }
@@ -410,6 +553,7 @@ public class StringEncryption {
 	    throw new IllegalStateException("Password is not set");
 	if (salt == null)
 	    throw new IllegalStateException("No salt");
+	discardCiphers();
 	/*
 	 * Android 4.4 changed the behavior of PBKDF2WithHmacSHA1
 	 * to use the UTF-8 encoding of the password instead of
@@ -420,6 +564,7 @@ public class StringEncryption {
 	 */
 	byte[] passwordKey =
 	    PKCS5S2ParametersGenerator.PKCS5PasswordToUTF8Bytes(userPassword);
+
 	PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator();
 	generator.init(passwordKey, salt, keyIterationCount);
 	KeyParameter param = generator.generateDerivedMacParameters(keyLength);
@@ -427,6 +572,146 @@ public class StringEncryption {
 	key = param.getKey();
     }
 
+    /**
+     * Compute the tag of the current password under a derived key,
+     * used to tell whether a cached key belongs to this password.
+     */
+    private byte[] passwordTag(byte[] tagKey) {
+	byte[] passwordBytes =
+	    PKCS5S2ParametersGenerator.PKCS5PasswordToUTF8Bytes(userPassword);
+	HMac mac = new HMac(new SHA256Digest());
+	mac.init(new KeyParameter(tagKey));
+	mac.update(passwordBytes, 0, passwordBytes.length);
+	Arrays.fill(passwordBytes, (byte) 0);
+	byte[] tag = new byte[mac.getMacSize()];
+	mac.doFinal(tag, 0);
+	return tag;
+    }
+
+    /**
+     * Look for a key which was derived for the given stored password
+     * hash and the current password.  If the password does not match
+     * the cached key, the key is derived again as usual so that a
+     * wrong password takes as long to reject as without the cache.
+     *
+     * @return true if {@link #key} was set from the cache
+     */
+    private boolean useCachedKey(ByteBuffer verifier) {
+	synchronized (keyCache) {
+	    CachedKey cached = keyCache.get(verifier);
+	    if (cached == null)
+		return false;
+	    if (System.currentTimeMillis() - cached.time
+		    >= KEY_CACHE_TIMEOUT) {
+		keyCache.remove(verifier);
+		cached.wipe();
+		return false;
+	    }
+	    byte[] tag = passwordTag(cached.key);
+	    boolean matches = MessageDigest.isEqual(tag, cached.passwordTag);
+	    Arrays.fill(tag, (byte) 0);
+	    if (!matches)
+		return false;
+	    discardCiphers();
+	    key = cached.key.clone();
+	}
+	keyVerifier = verifier;
+	return true;
+    }
+
+    /**
+     * Add the current key to the cache under the stored password hash
+     * it was checked against or generated for.
+     */
+    private void cacheKey(ByteBuffer verifier) {
+	if (userPassword == null)
+	    return;
+	CachedKey entry = new CachedKey(key.clone(), passwordTag(key));
+	synchronized (keyCache) {
+	    CachedKey old = keyCache.put(verifier, entry);
+	    if (old != null)
+		old.wipe();
+	}
+	keyVerifier = verifier;
+    }
+
+    /**
+     * Clear all derived keys from the key cache.  This should be
+     * called when the screen is locked.  Encryption objects which
+     * already have their key are not affected.
+     */
+    public static void clearKeyCache() {
+	synchronized (keyCache) {
+	    Iterator<CachedKey> iter = keyCache.values().iterator();
+	    while (iter.hasNext()) {
+		iter.next().wipe();
+		iter.remove();
+	    }
+	}
+    }
+
+    /**
+     * Get a cipher initialized with the current key,
+     * either from the pool or newly created.
+     *
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     */
+    private CipherBackend.KeyedCipher borrowCipher(int mode)
+		throws GeneralSecurityException {
+	ArrayDeque<CipherBackend.KeyedCipher> pool =
+	    (mode == Cipher.ENCRYPT_MODE) ? encryptors : decryptors;
+	synchronized (pool) {
+	    CipherBackend.KeyedCipher cipher = pool.poll();
+	    if (cipher != null)
+		return cipher;
+	}
+	return CipherBackend.select().newCipher(mode, key);
+    }
+
+    /**
+     * Put a cipher back in the pool after it has successfully
+     * finished a message.  It is dropped if the key has changed
+     * since it was borrowed or the pool is full.
+     *
+     * @param generation the value of {@link #keyGeneration}
+     * when the cipher was borrowed
+     */
+    private void returnCipher(int mode, CipherBackend.KeyedCipher cipher,
+	    int generation) {
+	ArrayDeque<CipherBackend.KeyedCipher> pool =
+	    (mode == Cipher.ENCRYPT_MODE) ? encryptors : decryptors;
+	synchronized (pool) {
+	    if ((generation == keyGeneration) &&
+		    (pool.size() < CIPHER_POOL_SIZE))
+		pool.push(cipher);
+	}
+    }
+
+    /**
+     * Drop all pooled ciphers and decrypted descriptions;
+     * called whenever the key changes
+     */
+    private void discardCiphers() {
+	synchronized (encryptors) {
+	    synchronized (decryptors) {
+		encryptors.clear();
+		decryptors.clear();
+		keyGeneration++;
+	    }
+	}
+	clearPlaintextCache();
+    }
+
+    /**
+     * Forget all cached descriptions.  This should be called when
+     * the system asks the application to trim its memory.
+     */
+    public void clearPlaintextCache() {
+	synchronized (plaintextCache) {
+	    plaintextCache.clear();
+	}
+    }
+
     /**
      * Encrypt a byte array.
      *
@@ -442,11 +727,12 @@ public class StringEncryption {
 	    return null;
 	if (key == null)
 	    generateKey();
+	int generation = keyGeneration;
 	try {
-	    SecretKeySpec spec = new SecretKeySpec(key, "AES");
-	    AESCipher cipher = new AESCipher();
-	    cipher.init(Cipher.ENCRYPT_MODE, spec);
-	    return cipher.doFinal(orig);
+	    CipherBackend.KeyedCipher cipher = borrowCipher(Cipher.ENCRYPT_MODE);
+	    byte[] result = cipher.doFinal(orig);
+	    returnCipher(Cipher.ENCRYPT_MODE, cipher, generation);
+	    return result;
 	} catch (GeneralSecurityException gsx) {
 	    forgetPassword();
 	    throw gsx;
@@ -490,11 +776,12 @@ public class StringEncryption {
 	    return null;
 	if (key == null)
 	    generateKey();
+	int generation = keyGeneration;
 	try {
-	    SecretKeySpec spec = new SecretKeySpec(key, "AES");
-	    AESCipher cipher = new AESCipher();
-	    cipher.init(Cipher.DECRYPT_MODE, spec);
-	    return cipher.doFinal(code);
+	    CipherBackend.KeyedCipher cipher = borrowCipher(Cipher.DECRYPT_MODE);
+	    byte[] result = cipher.doFinal(code);
+	    returnCipher(Cipher.DECRYPT_MODE, cipher, generation);
+	    return result;
 	} catch (IllegalBlockSizeException ibsx) {
 	    throw new InvalidKeyException(
 		    "Could not decode data using the given password", ibsx);
@@ -527,4 +814,39 @@ public class StringEncryption {
 		    "Could not decode data using the given password", uex);
 	}
     }
+
+    /**
+     * Decrypt the description of a To Do item.  The result is
+     * cached, so subsequent calls for the same version of the
+     * item do not need to decrypt it again.
+     *
+     * @param itemId the item&rsquo;s {@link ToDo.ToDoItem#_ID}
+     * @param modTime the item&rsquo;s {@link ToDo.ToDoItem#MOD_TIME}
+     * @param code the encrypted description
+     *
+     * @return the decrypted description
+     *
+     * @throws IllegalStateException if the password has not been provided
+     * @throws InvalidKeyException if the decryption does not result
+     * in a valid string.
+     */
+    public String decryptDescription(long itemId, long modTime, byte[] code)
+		throws GeneralSecurityException, IllegalStateException {
+	if (code == null)
+	    return null;
+	Long id = Long.valueOf(itemId);
+	synchronized (plaintextCache) {
+	    CachedText cached = plaintextCache.get(id);
+	    if ((cached != null) && (cached.modTime == modTime))
+		return cached.text;
+	}
+	int generation = keyGeneration;
+	String text = decrypt(code);
+	synchronized (plaintextCache) {
+	    // Don't cache text decrypted with a key that was since dropped
+	    if (generation == keyGeneration)
+		plaintextCache.put(id, new CachedText(modTime, text));
+	}
+	return text;
+    }
 }
@@ -134,6 +134,36 @@ public final class ToDo {
          */
         public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd.xmission.trevin.todo";
 
+        /**
+         * The content:// style URL for a full-text search of To Do items.
+         * The search terms are given by the {@link #SEARCH_QUERY}
+         * parameter using SQLite FTS query syntax.  Only items that
+         * are not encrypted can be found.  Results include the
+         * {@link #SEARCH_SNIPPET} and {@link #SEARCH_RANK} columns,
+         * and are sorted by rank unless a sort order is given.
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, "search");
+
+        /**
+         * The content:// style URL for counting To Do items.
+         * A query returns one row with the {@link #_COUNT} of items
+         * matching the selection.
+         */
+        public static final Uri COUNT_URI = Uri.withAppendedPath(CONTENT_URI, "count");
+
+        /**
+         * The content:// style URL for counting To Do items by category.
+         * A query returns one row for each category having items
+         * matching the selection, with the {@link #CATEGORY_ID},
+         * {@link #CATEGORY_NAME}, and {@link #_COUNT} of items.
+         */
+        public static final Uri CATEGORY_COUNT_URI = Uri.withAppendedPath(COUNT_URI, "categories");
+
+        /**
+         * The MIME type of {@link #COUNT_URI} and {@link #CATEGORY_COUNT_URI}.
+         */
+        public static final String COUNT_TYPE = "vnd.android.cursor.dir/vnd.xmission.trevin.todo.count";
+
         /**
          * The description of the To Do item (displayed text)
          * <P>Type: TEXT</P>
@@ -202,6 +232,13 @@ public final class ToDo {
          */
         public static final String NOTE = "note";
 
+        /**
+         * Whether the item has a {@link #NOTE}, computed by the provider
+         * so that lists can show the note icon without reading the note.
+         * <P>Type: INTEGER (boolean)</P>
+         */
+        public static final String HAS_NOTE = "has_note";
+
         /**
          * The number of days in advance to trigger the alarm (null disables)
          * <P>Type: INTEGER</P>
@@ -353,6 +390,70 @@ public final class ToDo {
          */
         public static final String NOTIFICATION_TIME = "notification_time";
 
+        /**
+         * The time at which this item stops being hidden, computed by
+         * the provider from {@link #DUE_TIME} and {@link #HIDE_DAYS_EARLIER}.
+         * This is 0 if the item is never hidden, or null if the item
+         * is hidden but has no due date.
+         * <P>Type: INTEGER (long from System.currentTimeMillis())</P>
+         */
+        public static final String VISIBLE_TIME = "visible_from";
+
+        /**
+         * The time at which this item's next alarm should go off,
+         * computed by the provider from {@link #DUE_TIME},
+         * {@link #ALARM_DAYS_EARLIER}, {@link #ALARM_TIME}, and
+         * {@link #NOTIFICATION_TIME} in the current time zone.
+         * This is null if the item has no alarm.
+         * <P>Type: INTEGER (long from System.currentTimeMillis())</P>
+         */
+        public static final String NEXT_ALARM_TIME = "next_alarm_time";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} which limits the
+         * number of items returned.  Together with {@link #QUERY_AFTER},
+         * this allows a long list to be read one page at a time.
+         * Paged queries also return the {@link #PAGE_KEY} column.
+         */
+        public static final String QUERY_LIMIT = "limit";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} giving the
+         * {@link #PAGE_KEY} of the last item on the previous page.
+         * Only items which sort after that item are returned.
+         * The sort order must be the same as for the previous page.
+         */
+        public static final String QUERY_AFTER = "after";
+
+        /**
+         * The position of an item in the sort order of a paged query,
+         * to be passed in {@link #QUERY_AFTER} for the next page.
+         * The content of the key should be treated as opaque.
+         * <P>Type: TEXT</P>
+         */
+        public static final String PAGE_KEY = "page_key";
+
+        /**
+         * Query parameter for {@link #SEARCH_URI} giving the search terms.
+         */
+        public static final String SEARCH_QUERY = "q";
+
+        /**
+         * An excerpt of the description or note of a search result
+         * around the matching terms, which are surrounded by
+         * &lt;b&gt; and &lt;/b&gt;.  Only available from {@link #SEARCH_URI}.
+         * <P>Type: TEXT</P>
+         */
+        public static final String SEARCH_SNIPPET = "snippet";
+
+        /**
+         * The number of times the search terms were found in a search
+         * result; higher numbers are better matches.
+         * Only available from {@link #SEARCH_URI}.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String SEARCH_RANK = "search_rank";
+
         /**
          * The default sort order for this table
          */
@@ -361,12 +462,14 @@ public final class ToDo {
         /**
          * Other pre-defined sort orders for this table.
          * The order must match the PrefSortByList string array resource.
+         * Categories whose names differ only in case are kept apart
+         * by their ID&rsquo;s.
          */
         public static final String[] USER_SORT_ORDERS = {
             PRIORITY + ", ifnull(" + DUE_TIME + ", 9.22e+18), lower(" + DESCRIPTION + "), " + MOD_TIME,
             "ifnull(" + DUE_TIME + ", 9.22e+18), " + PRIORITY + ", lower(" + DESCRIPTION + "), " + MOD_TIME,
-            "lower(" + CATEGORY_NAME + "), " + PRIORITY + ", lower(" + DESCRIPTION + "), " + MOD_TIME,
-            "lower(" + CATEGORY_NAME + "), ifnull(" + DUE_TIME + ", 9.22e+18), lower(" + DESCRIPTION + "), " + MOD_TIME,
+            "lower(" + CATEGORY_NAME + "), category." + ToDoCategory._ID + ", " + PRIORITY + ", lower(" + DESCRIPTION + "), " + MOD_TIME,
+            "lower(" + CATEGORY_NAME + "), category." + ToDoCategory._ID + ", ifnull(" + DUE_TIME + ", 9.22e+18), lower(" + DESCRIPTION + "), " + MOD_TIME,
             "lower(" + DESCRIPTION + "), " + MOD_TIME,
             "ifnull(" + DUE_TIME + ", 9.22e+18), lower(" + DESCRIPTION + "), " + MOD_TIME,
         };
@@ -0,0 +1,67 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import android.app.Application;
+import android.content.*;
+import android.util.Log;
+
+/**
+ * Process-wide setup for the To Do application.  This ties the
+ * lifetime of cached encryption keys to the process rather than
+ * to any one activity, so that keys derived by a background service
+ * are wiped on screen lock even when no activity is running.
+ */
+public class ToDoApplication extends Application {
+
+    private static final String TAG = "ToDoApplication";
+
+    /** Clear cached encryption keys when the screen turns off */
+    private final BroadcastReceiver screenOffReceiver =
+	new BroadcastReceiver() {
+	    @Override
+	    public void onReceive(Context context, Intent intent) {
+		Log.d(TAG, "Screen off; clearing the key cache");
+		StringEncryption.clearKeyCache();
+	    }
+    };
+
+    /** Called when the process starts, before any other component */
+    @Override
+    public void onCreate() {
+	super.onCreate();
+	registerReceiver(screenOffReceiver,
+		new IntentFilter(Intent.ACTION_SCREEN_OFF));
+    }
+
+    /**
+     * Called when the system is running low on memory.  Once our
+     * process is in the background there is no reason to keep
+     * derived keys around.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+	Log.d(TAG, ".onTrimMemory(" + level + ")");
+	super.onTrimMemory(level);
+	if (level >= TRIM_MEMORY_BACKGROUND)
+	    StringEncryption.clearKeyCache();
+    }
+
+}
@@ -29,17 +29,14 @@
  */
 package com.xmission.trevin.android.todo;
 
-import static com.xmission.trevin.android.todo.ToDoListActivity.*;
-
 import java.security.GeneralSecurityException;
-import java.text.SimpleDateFormat;
-import java.util.*;
 
 import com.xmission.trevin.android.todo.ToDo.ToDoItem;
 
 import android.app.Activity;
 import android.content.*;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 //import android.database.CursorIndexOutOfBoundsException;
 import android.net.Uri;
 import android.util.Log;
@@ -56,20 +53,50 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
 
     public final static String TAG = "ToDoCursorAdapter";
 
+    /** The columns needed to read an item&rsquo;s repeat settings */
+    private static final String[] REPEAT_PROJECTION = {
+	ToDoItem.DUE_TIME,
+	ToDoItem.REPEAT_INTERVAL,
+	ToDoItem.REPEAT_INCREMENT,
+	ToDoItem.REPEAT_DAY,
+	ToDoItem.REPEAT_DAY2,
+	ToDoItem.REPEAT_WEEK,
+	ToDoItem.REPEAT_WEEK2,
+	ToDoItem.REPEAT_WEEK_DAYS,
+	ToDoItem.REPEAT_MONTH,
+	ToDoItem.REPEAT_END,
+    };
+
     private final Activity callingActivity;
-    private final SharedPreferences prefs;
     private final ContentResolver contentResolver;
     private final Uri listUri;
 
     /** Encryption in case we're showing private records */
     private final StringEncryption encryptor;
 
+    /** Changes made in the list which have not been written yet */
+    private final ItemWriteQueue writeQueue;
+
+    /** Shows each item in its list_item views */
+    private final ToDoItemBinder binder;
+
     /**
-     * Keep track of which rows are assigned to which views.
-     * Binding occurs over and over again for the same rows,
-     * so we want to avoid any unnecessary work.
+     * The cursor whose column indexes are cached below.
+     * Looking up a column by name is a string search, so
+     * we only do it once for each cursor we are given.
      */
-    private Map<View,Long> bindingMap = new HashMap<View,Long>();
+    private Cursor indexedCursor = null;
+    private int idColumn;
+    private int checkedColumn;
+    private int priorityColumn;
+    private int privateColumn;
+    private int descriptionColumn;
+    private int modTimeColumn;
+    private int noteColumn;
+    private int alarmColumn;
+    private int repeatColumn;
+    private int dueTimeColumn;
+    private int categoryColumn;
 
     /** The item whose due date is currently selected */
     Uri selectedItemUri = null;
@@ -82,10 +109,39 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
 	    StringEncryption encryption) {
 	super(context, layout, cursor);
 	callingActivity = activity;
-	prefs = context.getSharedPreferences(TODO_PREFERENCES, MODE_PRIVATE);
  	contentResolver = cr;
  	listUri = uri;
  	encryptor = encryption;
+	writeQueue = ItemWriteQueue.getInstance(context);
+	binder = new ToDoItemBinder(context);
+    }
+
+    /** @see ToDoItemBinder#readDisplayPreferences */
+    void readDisplayPreferences() {
+	binder.readDisplayPreferences();
+    }
+
+    /** Look up the column indexes of a new cursor */
+    private void readColumnIndexes(Cursor cursor) {
+	idColumn = cursor.getColumnIndex(ToDoItem._ID);
+	checkedColumn = cursor.getColumnIndex(ToDoItem.CHECKED);
+	priorityColumn = cursor.getColumnIndex(ToDoItem.PRIORITY);
+	privateColumn = cursor.getColumnIndex(ToDoItem.PRIVATE);
+	descriptionColumn = cursor.getColumnIndex(ToDoItem.DESCRIPTION);
+	modTimeColumn = cursor.getColumnIndex(ToDoItem.MOD_TIME);
+	noteColumn = cursor.getColumnIndex(ToDoItem.HAS_NOTE);
+	alarmColumn = cursor.getColumnIndex(ToDoItem.ALARM_DAYS_EARLIER);
+	repeatColumn = cursor.getColumnIndex(ToDoItem.REPEAT_INTERVAL);
+	dueTimeColumn = cursor.getColumnIndex(ToDoItem.DUE_TIME);
+	categoryColumn = cursor.getColumnIndex(ToDoItem.CATEGORY_NAME);
+	indexedCursor = cursor;
+    }
+
+    /** Called when the loader delivers a new cursor */
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+	writeQueue.onReloaded();
+	return super.swapCursor(newCursor);
     }
 
     /**
@@ -96,211 +152,174 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
     /** Clear the URI of the item whose due date was selected after use */
     public void clearSelectedItemUri() { selectedItemUri = null; }
 
+    /**
+     * The widgets of a list item which need customizing per item,
+     * along with the listeners attached to them.  The listeners
+     * read the item from here, so they are created once per view
+     * and follow it as it is rebound to different rows.
+     */
+    class ViewHolder extends ToDoItemBinder.Views {
+	/** The ID of the item currently bound to this view */
+	long itemId = -1;
+
+	/** The cursor position of the item currently bound to this view */
+	int position = -1;
+
+	/** Whether the item currently bound to this view repeats */
+	boolean repeating;
+
+	ViewHolder(View view) {
+	    super(view);
+	    checkedListener = new OnCheckedChangeListener(this);
+
+	    // Set a long-click listener to bring up the details dialog
+	    OnDetailsClickListener detailsClickListener =
+		new OnDetailsClickListener(this);
+	    view.setOnLongClickListener(detailsClickListener);
+	    editDescription.setOnLongClickListener(detailsClickListener);
+
+	    // Set a regular click listener to bring up the note dialog
+	    noteImage.setOnClickListener(new OnNoteClickListener(this));
+
+	    // Set click listeners for the alarm and repeat fields
+	    alarmImage.setOnClickListener(detailsClickListener);
+	    repeatImage.setOnClickListener(detailsClickListener);
+
+	    // Set a click listener for changing the due date
+	    dueDateText.setOnClickListener(new OnDueDateClickListener(this));
+
+	    // To do: set a click listener for the category field
+	}
+
+	/** @return the URI of the item currently bound to this view */
+	Uri getItemUri() {
+	    return ContentUris.withAppendedId(listUri, itemId);
+	}
+    }
+
+    /** Create a new list item view along with its holder */
+    @Override
+    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+	View view = super.newView(context, cursor, parent);
+	view.setTag(new ViewHolder(view));
+	return view;
+    }
+
     /**
      * Called when data from a cursor row needs to be displayed in the
      * given view.  This may include temporary display for the purpose of
      * measurement, in which case the same view may be reused multiple
      * times, so we cannot depend on a permanent connection to the data!
+     * <p>
+     * This is called for every row scrolled into view, so it should
+     * not allocate anything it does not have to.
      */
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
-	int itemID = cursor.getInt(cursor.getColumnIndex(ToDoItem._ID));
-
-	// If this view is already bound to the given row, skip (re-)binding.
-	if (bindingMap.containsKey(view) &&
-		bindingMap.get(view) == itemID)
-	    return;
-
-	Log.d(TAG, ".bindView(" + view + ",context,cursor [item #"
-		+ itemID + "])");
-
-	// Remove any existing callbacks to avoid spurious database changes
-	removeListeners(view);
-
-	// These are the widgets that need customizing per item
-	CheckBox checkBox = (CheckBox) view.findViewById(R.id.ToDoItemChecked);
-	TextView priorityText = (TextView) view.findViewById(R.id.ToDoTextPriority);
-	// To do: change this back to EditText when you can get it working
-	TextView editDescription = (TextView)
-		view.findViewById(R.id.ToDoEditDescription);
-	ImageView noteImage = (ImageView)
-		view.findViewById(R.id.ToDoNoteImage);
-	ImageView alarmImage = (ImageView)
-		view.findViewById(R.id.ToDoAlarmImage);
-	ImageView repeatImage = (ImageView)
-		view.findViewById(R.id.ToDoRepeatImage);
-	TextView dueDateText = (TextView)
-		view.findViewById(R.id.ToDoTextDueDate);
-	TextView overdueText = (TextView)
-		view.findViewById(R.id.ToDoTextOverdue);
-	TextView categText = (TextView) view.findViewById(R.id.ToDoTextCateg);
-
-	/*
-	 * Get the item data and set the widgets accordingly.
-	 * Note that bindView may be called repeatedly on the same item
-	 * which has already been initialized.  In order to avoid
-	 * unnecessary callbacks, only set widgets when the value
-	 * in the database differs from what is already shown.
-	 */
-	checkBox.setChecked(cursor.getInt(
-		cursor.getColumnIndex(ToDoItem.CHECKED)) != 0);
-	priorityText.setText(Integer.toString(cursor.getInt(
-		cursor.getColumnIndex(ToDoItem.PRIORITY))));
-	priorityText.setVisibility(prefs.getBoolean(TPREF_SHOW_PRIORITY, false)
-		? View.VISIBLE : View.GONE);
-	String description = context.getString(R.string.PasswordProtected);
-	int privacy = cursor.getInt(cursor.getColumnIndex(ToDoItem.PRIVATE));
+	if (cursor != indexedCursor)
+	    readColumnIndexes(cursor);
+	ViewHolder holder = (ViewHolder) view.getTag();
+	if (holder == null) {
+	    holder = new ViewHolder(view);
+	    view.setTag(holder);
+	}
+	long itemID = cursor.getLong(idColumn);
+
+	if (Log.isLoggable(TAG, Log.DEBUG))
+	    Log.d(TAG, ".bindView(" + view + ",context,cursor [item #"
+		    + itemID + "])");
+
+	holder.itemId = itemID;
+	holder.position = cursor.getPosition();
+
+	String description = null;
+	int privacy = cursor.getInt(privateColumn);
 	if (privacy > 1) {
-	    if (encryptor.hasKey()) {
+	    if ((cursor instanceof DecryptingCursor) ||
+		    (cursor instanceof ItemListSnapshot.FilteredCursor) ||
+		    ((cursor instanceof CursorWrapper) &&
+		     (((CursorWrapper) cursor).getWrappedCursor()
+			     instanceof DecryptingCursor))) {
+		// Already decrypted by the loader
+		description = cursor.getString(descriptionColumn);
+	    } else if (encryptor.hasKey()) {
 		try {
-		    description = encryptor.decrypt(cursor.getBlob(
-			    cursor.getColumnIndex(ToDoItem.DESCRIPTION)));
+		    description = encryptor.decryptDescription(itemID,
+			    cursor.getLong(modTimeColumn),
+			    cursor.getBlob(descriptionColumn));
 		} catch (GeneralSecurityException gsx) {
 		    Log.e(TAG, "Unable to decrypt the description for item "
 			    + itemID, gsx);
 		}
 	    }
 	} else {
-	    description = cursor.getString(
-		    cursor.getColumnIndex(ToDoItem.DESCRIPTION));
-	}
-	editDescription.setText(description);
-	/* // If the description is empty, this is a new item.
-	// Give it focus so the user can enter some text.
-	// Empty items are removed when the focus is lost.
-	if (description.length() == 0)
-	    editDescription.requestFocus(); */
-	noteImage.setVisibility(cursor.isNull(cursor.getColumnIndex(
-		ToDoItem.NOTE)) ? View.GONE : View.VISIBLE);
-	alarmImage.setVisibility(cursor.isNull(cursor.getColumnIndex(
-		ToDoItem.ALARM_DAYS_EARLIER)) ? View.GONE : View.VISIBLE);
-	repeatImage.setVisibility(cursor.getInt(cursor.getColumnIndex(
-		ToDoItem.REPEAT_INTERVAL)) == ToDoItem.REPEAT_NONE
-		? View.GONE : View.VISIBLE);
-	if (cursor.isNull(cursor.getColumnIndex(ToDoItem.DUE_TIME))) {
-	    dueDateText.setText("\u2015");
-	    overdueText.setText("");
-	} else {
-	    Date due = new Date(cursor.getLong(cursor.getColumnIndex(
-		    ToDoItem.DUE_TIME)));
-	    SimpleDateFormat df = new SimpleDateFormat(
-		    view.getResources().getString(R.string.ListDueDateFormat));
-	    dueDateText.setText(df.format(due));
-	    overdueText.setText(due.before(new Date()) ? "!" : "");
+	    description = cursor.getString(descriptionColumn);
 	}
-	dueDateText.setVisibility(prefs.getBoolean(TPREF_SHOW_DUE_DATE, false)
-		? View.VISIBLE : View.GONE);
-	categText.setText(cursor.getString(cursor.getColumnIndex(
-		ToDoItem.CATEGORY_NAME)));
-	categText.setVisibility(prefs.getBoolean(TPREF_SHOW_CATEGORY, false)
-		? View.VISIBLE : View.GONE);
-
-	RepeatSettings repeat = new RepeatSettings(cursor);
-
-	// Set callbacks for the widgets
-	Uri itemUri = ContentUris.withAppendedId(listUri, itemID);
-	installListeners(view, itemUri, repeat);
+	holder.repeating = !cursor.isNull(repeatColumn) &&
+		(cursor.getInt(repeatColumn) != ToDoItem.REPEAT_NONE);
+	boolean hasDueDate = !cursor.isNull(dueTimeColumn);
+	binder.bind(holder, itemID, cursor.getLong(modTimeColumn),
+		cursor.getInt(checkedColumn) != 0,
+		cursor.getInt(priorityColumn), description,
+		cursor.getInt(noteColumn) != 0, !cursor.isNull(alarmColumn),
+		holder.repeating, hasDueDate,
+		hasDueDate ? cursor.getLong(dueTimeColumn) : 0,
+		cursor.getString(categoryColumn));
     }
 
     /**
-     * Remove all listeners from a view.
-     * This is necessary before binding to avoid callbacks
-     * while we're binding the view.
+     * Read the repeat settings of the item bound to a view.
+     * This is only needed when the item is checked off, so rather
+     * than parse them for every row we bind, we go back to the row
+     * in the adapter&rsquo;s cursor; if the cursor has changed since
+     * the view was bound, we read the item from the database instead.
+     *
+     * @return the repeat settings, or {@code null} if the item
+     * could not be found.
      */
-    void removeListeners(View view) {
-	CheckBox checkBox = (CheckBox) view.findViewById(R.id.ToDoItemChecked);
-	checkBox.setOnCheckedChangeListener(null);
-	TextView editDescription = (TextView)
-		view.findViewById(R.id.ToDoEditDescription);
-	editDescription.setOnFocusChangeListener(null);
-	ImageView noteImage = (ImageView)
-		view.findViewById(R.id.ToDoNoteImage);
-	noteImage.setOnClickListener(null);
-	ImageView alarmImage = (ImageView)
-		view.findViewById(R.id.ToDoAlarmImage);
-	alarmImage.setOnClickListener(null);
-	ImageView repeatImage = (ImageView)
-		view.findViewById(R.id.ToDoRepeatImage);
-	repeatImage.setOnClickListener(null);
-	TextView dueDateText = (TextView)
-		view.findViewById(R.id.ToDoTextDueDate);
-	dueDateText.setOnClickListener(null);
-    }
-
-    /**
-     * Install listeners onto a view.
-     * This must be done after binding.
-     */
-    void installListeners(View view, Uri itemUri, RepeatSettings repeat) {
-	CheckBox checkBox = (CheckBox) view.findViewById(R.id.ToDoItemChecked);
-	checkBox.setOnCheckedChangeListener(
-		new OnCheckedChangeListener(itemUri, repeat));
-
-	// Set a long-click listener to bring up the details dialog
-	OnDetailsClickListener detailsClickListener =
-	    new OnDetailsClickListener(itemUri);
-	view.setOnLongClickListener(detailsClickListener);
-	TextView editDescription = (TextView)
-		view.findViewById(R.id.ToDoEditDescription);
-	editDescription.setOnLongClickListener(detailsClickListener);
-
-	// Set a regular click listener to bring up the note dialog
-	ImageView noteImage = (ImageView)
-		view.findViewById(R.id.ToDoNoteImage);
-	noteImage.setOnClickListener(new OnNoteClickListener(itemUri));
-
-	// Set click listeners for the alarm and repeat fields
-	ImageView alarmImage = (ImageView)
-		view.findViewById(R.id.ToDoAlarmImage);
-	alarmImage.setOnClickListener(detailsClickListener);
-	ImageView repeatImage = (ImageView)
-		view.findViewById(R.id.ToDoRepeatImage);
-	repeatImage.setOnClickListener(detailsClickListener);
-
-	// Set a click listener for changing the due date
-	TextView dueDateText = (TextView)
-		view.findViewById(R.id.ToDoTextDueDate);
-	dueDateText.setOnClickListener(new OnDueDateClickListener(itemUri));
-
-	// To do: set a click listener for the category field
+    RepeatSettings readRepeatSettings(ViewHolder row) {
+	Cursor cursor = getCursor();
+	if ((cursor != null) && !cursor.isClosed() &&
+		cursor.moveToPosition(row.position)) {
+	    if (cursor != indexedCursor)
+		readColumnIndexes(cursor);
+	    if (cursor.getLong(idColumn) == row.itemId)
+		return new RepeatSettings(cursor);
+	}
+	Cursor c = contentResolver.query(row.getItemUri(),
+		REPEAT_PROJECTION, null, null, null);
+	try {
+	    if (!c.moveToFirst()) {
+		Log.w(TAG, "Item " + row.itemId + " no longer exists");
+		return null;
+	    }
+	    return new RepeatSettings(c);
+	} finally {
+	    c.close();
+	}
     }
 
     /** Listener for events on the "item completed" checkbox */
     class OnCheckedChangeListener
     implements CompoundButton.OnCheckedChangeListener {
-	private final Uri itemUri;
-	private final RepeatSettings repeat;
+	private final ViewHolder row;
 
-	/** Create a new change listener for a specific To-Do item's checkbox */
-	public OnCheckedChangeListener(Uri itemUri, RepeatSettings repeat) {
-	    this.itemUri = itemUri;
-	    this.repeat = repeat;
+	/** Create a new change listener for a list item's checkbox */
+	public OnCheckedChangeListener(ViewHolder row) {
+	    this.row = row;
 	}
 
 	/** Called when the user checks off (or back on) a to-do item */
 	@Override
 	public void onCheckedChanged(CompoundButton checkBox, boolean isChecked) {
-	    Log.d(TAG, ".onCheckedChanged(" + itemUri + "," + isChecked + ")");
-	    ContentValues values = new ContentValues();
-	    values.put(ToDoItem.CHECKED, isChecked ? 1 : 0);
-	    values.put(ToDoItem.MOD_TIME, System.currentTimeMillis());
-	    if (isChecked) {
-		Date completed = new Date();
-		values.put(ToDoItem.COMPLETED_TIME, completed.getTime());
-		/*
-		 * If the item has a repeat interval,
-		 * see if we need to change the due date
-		 * and reset the completed checkbox.
-		 */
-		if (repeat.getIntervalType() != RepeatSettings.IntervalType.NONE) {
-		    Date nextDueDate = repeat.computeNextDueDate(completed);
-		    if (nextDueDate != null) {
-			values.put(ToDoItem.DUE_TIME, nextDueDate.getTime());
-			values.put(ToDoItem.CHECKED, 0);
-		    }
-		}
-	    }
-	    contentResolver.update(itemUri, values, null, null);
+	    Log.d(TAG, ".onCheckedChanged(" + row.getItemUri()
+		    + "," + isChecked + ")");
+	    RepeatSettings repeat = (isChecked && row.repeating)
+		? readRepeatSettings(row) : null;
+	    // If a repeating item was reset to its next due date,
+	    // rebind now so that the row shows it right away.
+	    if (binder.writeChecked(row.itemId, isChecked, repeat))
+		notifyDataSetChanged();
 	}
     }
 
@@ -357,11 +376,11 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
 
     /** Listener for click events on the note icon */
     class OnNoteClickListener implements View.OnClickListener {
-	private final Uri itemUri;
+	private final ViewHolder row;
 
-	/** Create a new click listener for a specific To-Do item's note */
-	public OnNoteClickListener(Uri itemUri) {
-	    this.itemUri = itemUri;
+	/** Create a new click listener for a list item's note */
+	public OnNoteClickListener(ViewHolder row) {
+	    this.row = row;
 	}
 
 	@Override
@@ -369,22 +388,23 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
 	    Log.d(TAG, "ToDoNoteImage.onClick");
 	    Intent intent = new Intent(v.getContext(),
 		    ToDoNoteActivity.class);
-	    intent.setData(itemUri);
+	    intent.setData(row.getItemUri());
 	    v.getContext().startActivity(intent);
 	}
     }
 
     /** Listener for click events on the due date */
     class OnDueDateClickListener implements View.OnClickListener {
-	private final Uri itemUri;
+	private final ViewHolder row;
 
-	/** Create a new click listener for a specific To-Do item's due date */
-	public OnDueDateClickListener(Uri itemUri) {
-	    this.itemUri = itemUri;
+	/** Create a new click listener for a list item's due date */
+	public OnDueDateClickListener(ViewHolder row) {
+	    this.row = row;
 	}
 
 	@Override
 	public void onClick(View v) {
+	    Uri itemUri = row.getItemUri();
 	    Log.d(TAG, "ToDoTextDueDate.onClick(" + itemUri + ")");
 	    selectedItemUri = itemUri;
 	    callingActivity.showDialog(ToDoDetailsActivity.DUEDATE_LIST_ID);
@@ -394,11 +414,11 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
     /** Listener for (long-)click events on the To Do item */
     class OnDetailsClickListener
     implements View.OnLongClickListener, View.OnClickListener {
-	private final Uri itemUri;
+	private final ViewHolder row;
 
-	/** Create a new detail click listener for a specific To-Do item */
-	public OnDetailsClickListener(Uri itemUri) {
-	    this.itemUri = itemUri;
+	/** Create a new detail click listener for a list item */
+	public OnDetailsClickListener(ViewHolder row) {
+	    this.row = row;
 	}
 
 	@Override
@@ -406,7 +426,7 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
 	    Log.d(TAG, ".onClick(EditText)");
 	    Intent intent = new Intent(v.getContext(),
 		    ToDoDetailsActivity.class);
-	    intent.setData(itemUri);
+	    intent.setData(row.getItemUri());
 	    v.getContext().startActivity(intent);
 	}
 
@@ -415,7 +435,7 @@ public class ToDoCursorAdapter extends ResourceCursorAdapter {
 	    Log.d(TAG, ".onLongClick(EditText)");
 	    Intent intent = new Intent(v.getContext(),
 		    ToDoDetailsActivity.class);
-	    intent.setData(itemUri);
+	    intent.setData(row.getItemUri());
 	    v.getContext().startActivity(intent);
 	    return true;
 	}
@@ -0,0 +1,249 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import static com.xmission.trevin.android.todo.ToDoListActivity.*;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.view.View;
+import android.widget.*;
+
+/**
+ * Shows a To Do item in the widgets of the list_item layout.
+ * This is shared by {@link ToDoCursorAdapter} and
+ * {@link ToDoRecyclerAdapter}, which differ only in
+ * where they read the item from.
+ */
+class ToDoItemBinder {
+
+    private static final String TAG = "ToDoItemBinder";
+
+    private final SharedPreferences prefs;
+
+    /** Changes made in the list which have not been written yet */
+    private final ItemWriteQueue writeQueue;
+
+    /** Format for the due date column */
+    private final SimpleDateFormat dueDateFormat;
+
+    /** Scratch date for formatting due dates */
+    private final Date dueDate = new Date();
+
+    /** Text shown in place of a description we cannot decrypt */
+    private final String passwordProtectedText;
+
+    /** Cached display preferences; see {@link #readDisplayPreferences} */
+    private boolean showPriority;
+    private boolean showDueDate;
+    private boolean showCategory;
+
+    ToDoItemBinder(Context context) {
+	prefs = context.getSharedPreferences(TODO_PREFERENCES, MODE_PRIVATE);
+	writeQueue = ItemWriteQueue.getInstance(context);
+	dueDateFormat = new SimpleDateFormat(
+		context.getString(R.string.ListDueDateFormat));
+	passwordProtectedText = context.getString(R.string.PasswordProtected);
+	readDisplayPreferences();
+    }
+
+    /**
+     * Read the preferences which control which columns are shown.
+     * This must be called when any of them change, before
+     * the views are rebound.
+     */
+    void readDisplayPreferences() {
+	showPriority = prefs.getBoolean(TPREF_SHOW_PRIORITY, false);
+	showDueDate = prefs.getBoolean(TPREF_SHOW_DUE_DATE, false);
+	showCategory = prefs.getBoolean(TPREF_SHOW_CATEGORY, false);
+    }
+
+    /**
+     * The widgets of a list item which need customizing per item,
+     * looked up once when the view is created.  The adapters keep
+     * these in their view holders along with the item bound to them.
+     */
+    static class Views {
+	final CheckBox checkBox;
+	final TextView priorityText;
+	// To do: change this back to EditText when you can get it working
+	final TextView editDescription;
+	final ImageView noteImage;
+	final ImageView alarmImage;
+	final ImageView repeatImage;
+	final TextView dueDateText;
+	final TextView overdueText;
+	final TextView categText;
+
+	/**
+	 * The listener for the checkbox, which is removed
+	 * while the view is being bound
+	 */
+	CompoundButton.OnCheckedChangeListener checkedListener = null;
+
+	/** The priority currently shown, or -1 if not set */
+	int shownPriority = -1;
+
+	/**
+	 * The due date currently shown, {@link Long#MIN_VALUE} if the
+	 * item has none, or {@link Long#MAX_VALUE} if not yet set.
+	 */
+	long shownDueTime = Long.MAX_VALUE;
+
+	Views(View view) {
+	    checkBox = (CheckBox) view.findViewById(R.id.ToDoItemChecked);
+	    priorityText = (TextView) view.findViewById(R.id.ToDoTextPriority);
+	    editDescription = (TextView)
+		    view.findViewById(R.id.ToDoEditDescription);
+	    noteImage = (ImageView) view.findViewById(R.id.ToDoNoteImage);
+	    alarmImage = (ImageView) view.findViewById(R.id.ToDoAlarmImage);
+	    repeatImage = (ImageView) view.findViewById(R.id.ToDoRepeatImage);
+	    dueDateText = (TextView) view.findViewById(R.id.ToDoTextDueDate);
+	    overdueText = (TextView) view.findViewById(R.id.ToDoTextOverdue);
+	    categText = (TextView) view.findViewById(R.id.ToDoTextCateg);
+	}
+    }
+
+    /**
+     * Show an item in a list item&rsquo;s widgets, along with any
+     * changes the user has made which have not been written yet.
+     * This is called for every row scrolled into view, so it only
+     * sets widgets whose values have changed and does not allocate
+     * anything it does not have to.
+     *
+     * @param description the item&rsquo;s description, or {@code null}
+     * if it is encrypted and could not be decrypted
+     * @param hasDueDate whether the item has a due date
+     * @param dueTime the due date, if {@code hasDueDate}
+     */
+    void bind(Views views, long itemId, long modTime, boolean checked,
+	    int priority, String description, boolean hasNote,
+	    boolean hasAlarm, boolean repeating, boolean hasDueDate,
+	    long dueTime, String categoryName) {
+	// Show any changes the user has made which have not been
+	// written yet, so the row does not flip back to its old state.
+	ContentValues edits = writeQueue.isEmpty() ? null
+		: writeQueue.getPendingValues(itemId, modTime);
+	if (edits != null) {
+	    if (edits.containsKey(ToDoItem.CHECKED))
+		checked = edits.getAsInteger(ToDoItem.CHECKED) != 0;
+	    if (edits.containsKey(ToDoItem.DUE_TIME)) {
+		Long pendingDue = edits.getAsLong(ToDoItem.DUE_TIME);
+		hasDueDate = (pendingDue != null);
+		dueTime = hasDueDate ? pendingDue : 0;
+	    }
+	}
+
+	// Remove the checkbox callback to avoid spurious database changes
+	views.checkBox.setOnCheckedChangeListener(null);
+	views.checkBox.setChecked(checked);
+	if (priority != views.shownPriority) {
+	    views.priorityText.setText(Integer.toString(priority));
+	    views.shownPriority = priority;
+	}
+	views.priorityText.setVisibility(showPriority
+		? View.VISIBLE : View.GONE);
+	views.editDescription.setText((description == null)
+		? passwordProtectedText : description);
+	views.noteImage.setVisibility(hasNote ? View.VISIBLE : View.GONE);
+	views.alarmImage.setVisibility(hasAlarm ? View.VISIBLE : View.GONE);
+	views.repeatImage.setVisibility(repeating
+		? View.VISIBLE : View.GONE);
+	if (!hasDueDate) {
+	    if (views.shownDueTime != Long.MIN_VALUE) {
+		views.dueDateText.setText("\u2015");
+		views.shownDueTime = Long.MIN_VALUE;
+	    }
+	    views.overdueText.setText("");
+	} else {
+	    if (dueTime != views.shownDueTime) {
+		dueDate.setTime(dueTime);
+		views.dueDateText.setText(dueDateFormat.format(dueDate));
+		views.shownDueTime = dueTime;
+	    }
+	    views.overdueText.setText(
+		    (dueTime < System.currentTimeMillis()) ? "!" : "");
+	}
+	views.dueDateText.setVisibility(showDueDate
+		? View.VISIBLE : View.GONE);
+	views.categText.setText(categoryName);
+	views.categText.setVisibility(showCategory
+		? View.VISIBLE : View.GONE);
+
+	// Restore the checkbox callback now that the view is bound
+	views.checkBox.setOnCheckedChangeListener(views.checkedListener);
+    }
+
+    /**
+     * Write a change to an item&rsquo;s checkbox in the background.
+     * If the item is checked off and repeats, it is given its next
+     * due date and unchecked instead.
+     *
+     * @param repeat the item&rsquo;s repeat settings, which will be
+     * changed, or {@code null} if it is not being checked off
+     * or does not repeat
+     *
+     * @return whether the item was reset to its next due date,
+     * in which case its row should be rebound to show it.
+     */
+    boolean writeChecked(long itemId, boolean isChecked,
+	    RepeatSettings repeat) {
+	Log.d(TAG, ".writeChecked(" + itemId + "," + isChecked + ")");
+	ContentValues values = new ContentValues();
+	values.put(ToDoItem.CHECKED, isChecked ? 1 : 0);
+	values.put(ToDoItem.MOD_TIME, System.currentTimeMillis());
+	if (isChecked) {
+	    Date completed = new Date();
+	    values.put(ToDoItem.COMPLETED_TIME, completed.getTime());
+	    /*
+	     * If the item has a repeat interval,
+	     * see if we need to change the due date
+	     * and reset the completed checkbox.
+	     */
+	    if ((repeat != null) && (repeat.getIntervalType()
+		    != RepeatSettings.IntervalType.NONE)) {
+		// Start from a due date which has not been written yet
+		ContentValues edits =
+		    writeQueue.getPendingValues(itemId, Long.MIN_VALUE);
+		if ((edits != null) && (edits.getAsLong(
+			ToDoItem.DUE_TIME) != null))
+		    repeat.setDueDate(new Date(
+			    edits.getAsLong(ToDoItem.DUE_TIME)));
+		Date nextDueDate = repeat.computeNextDueDate(completed);
+		if (nextDueDate != null) {
+		    values.put(ToDoItem.DUE_TIME, nextDueDate.getTime());
+		    values.put(ToDoItem.CHECKED, 0);
+		}
+	    }
+	}
+	// Write the change in the background; the checkbox already
+	// shows it, and the list will be reloaded once it is saved.
+	writeQueue.update(itemId, values);
+	return values.getAsInteger(ToDoItem.CHECKED) != (isChecked ? 1 : 0);
+    }
+
+}
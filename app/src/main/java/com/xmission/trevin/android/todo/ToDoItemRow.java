@@ -0,0 +1,153 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+/**
+ * What the item list shows for one To Do item, copied out of the
+ * cursor so that it can be compared with the previous copy of the
+ * list in the background.  Rows are never modified once created.
+ */
+class ToDoItemRow {
+
+    /** The columns needed to fill in a row */
+    static final String[] PROJECTION = {
+	ToDoItem._ID,
+	ToDoItem.DESCRIPTION,
+	ToDoItem.MOD_TIME,
+	ToDoItem.CHECKED,
+	ToDoItem.HAS_NOTE,
+	ToDoItem.ALARM_DAYS_EARLIER,
+	ToDoItem.REPEAT_INTERVAL,
+	ToDoItem.DUE_TIME,
+	ToDoItem.CATEGORY_NAME,
+	ToDoItem.PRIVATE,
+	ToDoItem.PRIORITY,
+	// The rest of the repeat settings, read only for repeating items
+	ToDoItem.REPEAT_INCREMENT,
+	ToDoItem.REPEAT_DAY,
+	ToDoItem.REPEAT_DAY2,
+	ToDoItem.REPEAT_WEEK,
+	ToDoItem.REPEAT_WEEK2,
+	ToDoItem.REPEAT_WEEK_DAYS,
+	ToDoItem.REPEAT_MONTH,
+	ToDoItem.REPEAT_END,
+    };
+
+    /** Column indexes of the {@link #PROJECTION} in a cursor */
+    static class Columns {
+	final int id;
+	final int description;
+	final int modTime;
+	final int checked;
+	final int note;
+	final int alarm;
+	final int repeat;
+	final int dueTime;
+	final int category;
+	final int privacy;
+	final int priority;
+
+	Columns(Cursor c) {
+	    id = c.getColumnIndexOrThrow(ToDoItem._ID);
+	    description = c.getColumnIndexOrThrow(ToDoItem.DESCRIPTION);
+	    modTime = c.getColumnIndexOrThrow(ToDoItem.MOD_TIME);
+	    checked = c.getColumnIndexOrThrow(ToDoItem.CHECKED);
+	    note = c.getColumnIndexOrThrow(ToDoItem.HAS_NOTE);
+	    alarm = c.getColumnIndexOrThrow(ToDoItem.ALARM_DAYS_EARLIER);
+	    repeat = c.getColumnIndexOrThrow(ToDoItem.REPEAT_INTERVAL);
+	    dueTime = c.getColumnIndexOrThrow(ToDoItem.DUE_TIME);
+	    category = c.getColumnIndexOrThrow(ToDoItem.CATEGORY_NAME);
+	    privacy = c.getColumnIndexOrThrow(ToDoItem.PRIVATE);
+	    priority = c.getColumnIndexOrThrow(ToDoItem.PRIORITY);
+	}
+    }
+
+    final long id;
+    final long modTime;
+    final boolean checked;
+    final int priority;
+
+    /**
+     * The item&rsquo;s description, or {@code null}
+     * if it is encrypted and could not be decrypted.
+     */
+    final String description;
+
+    final boolean hasNote;
+    final boolean hasAlarm;
+    final boolean repeating;
+
+    /**
+     * The item&rsquo;s repeat settings, or {@code null} if it does not
+     * repeat.  These are needed when the item is checked off, so they
+     * are read here rather than on the UI thread; since rows are shared,
+     * use a {@link RepeatSettings#clone() clone} to compute a due date.
+     */
+    final RepeatSettings repeat;
+
+    /** Whether the item has a due date */
+    final boolean hasDueDate;
+    /** The due date, if {@link #hasDueDate} */
+    final long dueTime;
+
+    final String categoryName;
+
+    /**
+     * Copy a row from the cursor at its current position.
+     *
+     * @param c the item cursor; if any descriptions are encrypted,
+     * this must be a {@link DecryptingCursor}.
+     * @param col the column indexes of the cursor
+     */
+    ToDoItemRow(Cursor c, Columns col) {
+	id = c.getLong(col.id);
+	modTime = c.getLong(col.modTime);
+	checked = c.getInt(col.checked) != 0;
+	priority = c.getInt(col.priority);
+	description = c.getString(col.description);
+	hasNote = c.getInt(col.note) != 0;
+	hasAlarm = !c.isNull(col.alarm);
+	repeating = !c.isNull(col.repeat) &&
+		(c.getInt(col.repeat) != ToDoItem.REPEAT_NONE);
+	repeat = repeating ? new RepeatSettings(c) : null;
+	hasDueDate = !c.isNull(col.dueTime);
+	dueTime = hasDueDate ? c.getLong(col.dueTime) : 0;
+	categoryName = c.getString(col.category);
+    }
+
+    /**
+     * @return whether this row would be shown the same way as another
+     * row for the same item.  Any change to the item itself updates
+     * its modification time; the description and category name are
+     * also compared because they change when the password is entered
+     * or a category is renamed.
+     */
+    boolean looksLike(ToDoItemRow other) {
+	return (modTime == other.modTime) &&
+	    TextUtils.equals(description, other.description) &&
+	    TextUtils.equals(categoryName, other.categoryName);
+    }
+
+}
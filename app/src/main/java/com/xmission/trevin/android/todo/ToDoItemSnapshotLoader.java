@@ -0,0 +1,213 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import static com.xmission.trevin.android.todo.ToDoListActivity.*;
+
+import java.util.*;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+import android.util.Log;
+
+/**
+ * Loads the To Do list into a list of {@link ToDoItemRow}s and
+ * works out how it differs from the list the screen is showing,
+ * all in the background.  The UI thread then only has to apply
+ * the inserts, removals, moves and changes, so changing one item
+ * in a long list only touches that item&rsquo;s row.
+ * <p>
+ * The query uses the same filters and sort order as
+ * {@link ToDoListActivity}.  The loader reloads itself whenever
+ * the items in the database change; call {@link #onContentChanged()}
+ * when the filter preferences change.
+ */
+class ToDoItemSnapshotLoader
+    extends AsyncTaskLoader<ToDoItemSnapshotLoader.Snapshot> {
+
+    private static final String TAG = "ToDoItemSnapshotLoader";
+
+    /** A loaded list and how to get to it from the previous one */
+    static class Snapshot {
+	/** The rows of the list, in display order */
+	final List<ToDoItemRow> rows;
+
+	/** The list this snapshot was compared with */
+	final List<ToDoItemRow> base;
+
+	/**
+	 * The changes from {@link #base} to {@link #rows},
+	 * or {@code null} if this is the first list loaded.
+	 */
+	final DiffUtil.DiffResult diff;
+
+	Snapshot(List<ToDoItemRow> rows, List<ToDoItemRow> base,
+		DiffUtil.DiffResult diff) {
+	    this.rows = rows;
+	    this.base = base;
+	    this.diff = diff;
+	}
+    }
+
+    /** Compares two lists of rows by item ID and modification time */
+    static class RowDiffCallback extends DiffUtil.Callback {
+	private final List<ToDoItemRow> oldRows;
+	private final List<ToDoItemRow> newRows;
+
+	RowDiffCallback(List<ToDoItemRow> oldRows,
+		List<ToDoItemRow> newRows) {
+	    this.oldRows = oldRows;
+	    this.newRows = newRows;
+	}
+
+	@Override
+	public int getOldListSize() {
+	    return oldRows.size();
+	}
+
+	@Override
+	public int getNewListSize() {
+	    return newRows.size();
+	}
+
+	@Override
+	public boolean areItemsTheSame(int oldPosition, int newPosition) {
+	    return oldRows.get(oldPosition).id == newRows.get(newPosition).id;
+	}
+
+	@Override
+	public boolean areContentsTheSame(int oldPosition, int newPosition) {
+	    return oldRows.get(oldPosition).looksLike(
+		    newRows.get(newPosition));
+	}
+    }
+
+    private final SharedPreferences prefs;
+    private final StringEncryption encryptor;
+    private final ForceLoadContentObserver observer =
+	new ForceLoadContentObserver();
+    private boolean observing = false;
+
+    /**
+     * The last snapshot delivered.  This is read by
+     * the background thread to compare with the new list.
+     */
+    private volatile Snapshot current = null;
+
+    /**
+     * @param context the activity using this loader
+     * @param encryptor the encryption object for decrypting
+     * private descriptions
+     */
+    ToDoItemSnapshotLoader(Context context, StringEncryption encryptor) {
+	super(context);
+	prefs = context.getSharedPreferences(TODO_PREFERENCES, MODE_PRIVATE);
+	this.encryptor = encryptor;
+    }
+
+    @Override
+    public Snapshot loadInBackground() {
+	Log.d(TAG, ".loadInBackground");
+	int selectedSortOrder = prefs.getInt(TPREF_SORT_ORDER, 0);
+	if ((selectedSortOrder < 0) ||
+		(selectedSortOrder >= ToDoItem.USER_SORT_ORDERS.length))
+	    selectedSortOrder = 0;
+	List<String> whereArgs = new ArrayList<String>(2);
+	String whereClause = generateWhereClause(prefs, whereArgs);
+	Cursor c = getContext().getContentResolver().query(
+		ToDoItem.CONTENT_URI, ToDoItemRow.PROJECTION, whereClause,
+		whereArgs.toArray(new String[whereArgs.size()]),
+		ToDoItem.USER_SORT_ORDERS[selectedSortOrder]);
+	if (c == null)
+	    return null;
+	List<ToDoItemRow> rows;
+	try {
+	    // The decrypting cursor reads private descriptions
+	    // through the encryptor's plaintext cache.
+	    Cursor dc = new DecryptingCursor(c, encryptor);
+	    ToDoItemRow.Columns col = new ToDoItemRow.Columns(dc);
+	    rows = new ArrayList<ToDoItemRow>(dc.getCount());
+	    while (dc.moveToNext()) {
+		if (isLoadInBackgroundCanceled())
+		    return null;
+		rows.add(new ToDoItemRow(dc, col));
+	    }
+	} finally {
+	    c.close();
+	}
+	rows = Collections.unmodifiableList(rows);
+
+	Snapshot previous = current;
+	if (previous == null)
+	    return new Snapshot(rows, null, null);
+	long start = System.nanoTime();
+	DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+		new RowDiffCallback(previous.rows, rows), true);
+	Log.d(TAG, String.format(".loadInBackground: compared %d rows to %d"
+		+ " in %d ms", rows.size(), previous.rows.size(),
+		(System.nanoTime() - start) / 1000000));
+	return new Snapshot(rows, previous.rows, diff);
+    }
+
+    @Override
+    public void deliverResult(Snapshot snapshot) {
+	if (isReset())
+	    return;
+	current = snapshot;
+	if (isStarted())
+	    super.deliverResult(snapshot);
+    }
+
+    @Override
+    protected void onStartLoading() {
+	if (!observing) {
+	    getContext().getContentResolver().registerContentObserver(
+		    ToDoItem.CONTENT_URI, true, observer);
+	    observing = true;
+	}
+	if (current != null)
+	    deliverResult(current);
+	if (takeContentChanged() || (current == null))
+	    forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+	cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+	super.onReset();
+	onStopLoading();
+	if (observing) {
+	    getContext().getContentResolver()
+		.unregisterContentObserver(observer);
+	    observing = false;
+	}
+	current = null;
+    }
+
+}
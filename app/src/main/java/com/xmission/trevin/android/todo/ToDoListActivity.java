@@ -49,10 +49,12 @@ package com.xmission.trevin.android.todo;
 
 import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Locale;
 
 import com.xmission.trevin.android.todo.ToDo.*;
@@ -111,8 +113,9 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
     private static final String[] ITEM_PROJECTION = new String[] {
             ToDoItem._ID,
             ToDoItem.DESCRIPTION,
+            ToDoItem.MOD_TIME,
             ToDoItem.CHECKED,
-            ToDoItem.NOTE,
+            ToDoItem.HAS_NOTE,
             ToDoItem.ALARM_DAYS_EARLIER,
             ToDoItem.REPEAT_INTERVAL,
             ToDoItem.DUE_TIME,
@@ -263,7 +266,8 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 	encryptor = StringEncryption.holdGlobalEncryption();
 	prefs = getSharedPreferences(TODO_PREFERENCES, MODE_PRIVATE);
 	prefs.registerOnSharedPreferenceChangeListener(this);
-	String whereClause = generateWhereClause();
+	List<String> whereArgs = new ArrayList<String>(2);
+	String whereClause = generateWhereClause(prefs, whereArgs);
 
         int selectedSortOrder = prefs.getInt(TPREF_SORT_ORDER, 0);
         if ((selectedSortOrder < 0) ||
@@ -351,7 +355,8 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 		    + whereClause + " ordered by "
 		    + ToDoItem.USER_SORT_ORDERS[selectedSortOrder]);
 	    itemCursor = managedQuery(todoUri,
-		    ITEM_PROJECTION, whereClause, null,
+		    ITEM_PROJECTION, whereClause,
+		    whereArgs.toArray(new String[whereArgs.size()]),
 		    ToDoItem.USER_SORT_ORDERS[selectedSortOrder]);
 	    itemAdapter = new ToDoCursorAdapter(
 		    this, R.layout.list_item, itemCursor,
@@ -366,25 +371,40 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 		    Log.d(TAG, ".LoaderCallbacks$ITEM.onCreateLoader");
 		    CursorLoader loader = new CursorLoader(ToDoListActivity.this) {
 			private Cursor myCursor = null;
+			private final ForceLoadContentObserver observer =
+			    new ForceLoadContentObserver();
+			private boolean observing = false;
 			@Override
 			public Cursor loadInBackground() {
 			    Log.d(TAG, ".LoaderCallbacks$ITEM.CursorLoader.loadInBackground");
-			    if (myCursor != null)
-				myCursor.close();
-			    int selectedSortOrder = prefs.getInt(TPREF_SORT_ORDER, 0);
-			    if ((selectedSortOrder < 0) ||
-				    (selectedSortOrder >= ToDoItem.USER_SORT_ORDERS.length)) {
-				prefs.edit().putInt(TPREF_SORT_ORDER, 0).commit();
-				selectedSortOrder = 0;
-			    }
-			    myCursor = getContentResolver().query(todoUri,
-				    ITEM_PROJECTION, generateWhereClause(), null,
-				    ToDoItem.USER_SORT_ORDERS[selectedSortOrder]);
-			    return myCursor;
+			    /*
+			     * Read the sort and filter fields of every item
+			     * so that changes to the filter and sort preferences
+			     * can be applied in memory.  The previous cursor is
+			     * closed by CursorLoader once the new one has been
+			     * delivered.
+			     */
+			    ItemListSnapshot snapshot = new ItemListSnapshot(
+				    getContentResolver(), todoUri, encryptor);
+			    return snapshot.select(prefs);
+			}
+			@Override
+			public void deliverResult(Cursor cursor) {
+			    // Also called with a new selection from the same
+			    // snapshot when the filter or sort order changes.
+			    myCursor = cursor;
+			    super.deliverResult(cursor);
 			}
 			@Override
 			protected void onStartLoading() {
 			    Log.d(TAG, ".LoaderCallbacks$ITEM.CursorLoader.onStartLoading");
+			    // The list shows a snapshot of the items,
+			    // so reload when any of them change.
+			    if (!observing) {
+				getContentResolver().registerContentObserver(
+					todoUri, true, observer);
+				observing = true;
+			    }
 			    super.onStartLoading();
 			}
 			@Override
@@ -400,6 +420,15 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 				myCursor.close();
 			    myCursor = null;
 			}
+			@Override
+			protected void onReset() {
+			    super.onReset();
+			    if (observing) {
+				getContentResolver().unregisterContentObserver(
+					observer);
+				observing = false;
+			    }
+			}
 		    };
 		    return loader;
 		}
@@ -528,6 +557,8 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
     public void onPause() {
 	Log.d(TAG, ".onPause");
 	super.onPause();
+	// Don't leave checked-off items waiting in memory
+	ItemWriteQueue.getInstance(this).flushSoon();
     }
 
     /** Called when the activity is obscured by another activity. */
@@ -537,6 +568,14 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 	super.onStop();
     }
 
+    /** Called when the system is running low on memory */
+    @Override
+    public void onTrimMemory(int level) {
+	Log.d(TAG, ".onTrimMemory(" + level + ")");
+	super.onTrimMemory(level);
+	encryptor.clearPlaintextCache();
+    }
+
     /** Called when the activity is about to be destroyed */
     @Override
     public void onDestroy() {
@@ -547,16 +586,22 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 
     /**
      * Generate the WHERE clause for the list query.
-     * This is used in both onCreate and onSharedPreferencesChanged.
+     * This is used in both onCreate and onSharedPreferencesChanged,
+     * and by {@link ToDoItemSnapshotLoader}.
+     * Values which change between queries are bound as parameters
+     * so that the same statement can be reused; these are added
+     * to <code>whereArgs</code>.
      */
-    private String generateWhereClause() {
+    static String generateWhereClause(
+	    SharedPreferences prefs, List<String> whereArgs) {
 	StringBuilder whereClause = new StringBuilder();
 	if (!prefs.getBoolean(TPREF_SHOW_CHECKED, false)) {
-	    whereClause.append(ToDoItem.CHECKED).append(" = 0")
-		.append(" AND (").append(ToDoItem.HIDE_DAYS_EARLIER)
-		.append(" IS NULL OR (").append(ToDoItem.DUE_TIME).append(" - ")
-		.append(ToDoItem.HIDE_DAYS_EARLIER).append(" * 86400000 < ")
-		.append(System.currentTimeMillis()).append("))");
+	    // Most unchecked items are visible, so tell SQLite the
+	    // time range is not worth an index scan; this lets it use
+	    // an index which also gives the rows in the sort order.
+	    whereClause.append(ToDoItem.CHECKED).append(" = 0 AND likely(")
+		.append(ToDoItem.VISIBLE_TIME).append(" < ?)");
+	    whereArgs.add(Long.toString(System.currentTimeMillis()));
 	}
 	if (!prefs.getBoolean(TPREF_SHOW_PRIVATE, false)) {
 	    if (whereClause.length() > 0)
@@ -567,8 +612,8 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 	if (selectedCategory >= 0) {
 	    if (whereClause.length() > 0)
 		whereClause.append(" AND ");
-	    whereClause.append(ToDoItem.CATEGORY_ID).append(" = ")
-		.append(selectedCategory);
+	    whereClause.append(ToDoItem.CATEGORY_ID).append(" = ?");
+	    whereArgs.add(Long.toString(selectedCategory));
         }
 	return whereClause.toString();
     }
@@ -668,10 +713,36 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
     public void onSharedPreferenceChanged(
 	    SharedPreferences prefs, String key) {
         Log.d(TAG, ".onSharedPreferenceChanged(\"" + key + "\")");
-	if (key.equals(TPREF_SHOW_CHECKED) || key.equals(TPREF_SHOW_PRIVATE) ||
+	// If we have a snapshot of all the items, changes to
+	// the filters or sort order can be applied in memory.
+	if ((key.equals(TPREF_SHOW_CHECKED) || key.equals(TPREF_SHOW_PRIVATE) ||
+		key.equals(TPREF_SELECTED_CATEGORY) ||
+		key.equals(TPREF_SORT_ORDER)) &&
+		(itemAdapter.getCursor() instanceof ItemListSnapshot.FilteredCursor) &&
+		!itemAdapter.getCursor().isClosed()) {
+	    ItemListSnapshot snapshot = ((ItemListSnapshot.FilteredCursor)
+		    itemAdapter.getCursor()).getSnapshot();
+	    Cursor selected = snapshot.select(prefs);
+	    Loader<Cursor> loader = getLoaderManager().getLoader(
+		    ToDoItem.CONTENT_TYPE.hashCode());
+	    if (loader != null) {
+		// The loader shows the new selection and
+		// closes the cursor it replaces.
+		loader.deliverResult(selected);
+	    } else {
+		Cursor old = itemAdapter.swapCursor(selected);
+		if (old != null)
+		    old.close();
+	    }
+	}
+	else if (key.equals(TPREF_SHOW_CHECKED) || key.equals(TPREF_SHOW_PRIVATE) ||
+		key.equals(TPREF_SHOW_ENCRYPTED) ||
 		key.equals(TPREF_SELECTED_CATEGORY) ||
 		key.equals(TPREF_SORT_ORDER)) {
-	    String whereClause = generateWhereClause();
+	    // Encrypted descriptions are decrypted when the items are
+	    // loaded, so reload them when the password is given or forgotten.
+	    List<String> whereArgs = new ArrayList<String>(2);
+	    String whereClause = generateWhereClause(prefs, whereArgs);
 
 	    int selectedSortOrder = prefs.getInt(TPREF_SORT_ORDER, 0);
 	    if ((selectedSortOrder < 0) ||
@@ -682,7 +753,8 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 		    + whereClause.toString());
 	    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
 		Cursor itemCursor = managedQuery(todoUri,
-			ITEM_PROJECTION, whereClause.toString(), null,
+			ITEM_PROJECTION, whereClause,
+			whereArgs.toArray(new String[whereArgs.size()]),
 			ToDoItem.USER_SORT_ORDERS[selectedSortOrder]);
 		// Change the cursor used by this list
 		itemAdapter.changeCursor(itemCursor);
@@ -697,6 +769,7 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 	    // To do: is there another way to do this?
 	    // The data has not actually changed, just the widget visibility.
 	    Log.d(TAG, ".onSharedPreferenceChanged: signaling a data change");
+	    itemAdapter.readDisplayPreferences();
 	    itemAdapter.notifyDataSetChanged();
 	}
 	// To do: etc...
@@ -747,6 +820,11 @@ implements SharedPreferences.OnSharedPreferenceChangeListener {
 	case R.id.menuPassword:
 	    showDialog(PASSWORD_DIALOG_ID);
 	    return true;
+
+	case R.id.menuLiveList:
+	    intent = new Intent(this, ToDoRecyclerActivity.class);
+	    startActivity(intent);
+	    return true;
 	}
     }
 
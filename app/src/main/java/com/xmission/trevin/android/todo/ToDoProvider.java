@@ -33,15 +33,27 @@ import com.xmission.trevin.android.todo.ToDo.ToDoCategory;
 import com.xmission.trevin.android.todo.ToDo.ToDoItem;
 import com.xmission.trevin.android.todo.ToDo.ToDoMetadata;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import android.content.*;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.*;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -52,11 +64,19 @@ public class ToDoProvider extends ContentProvider {
 
     private static final String TAG = "ToDoProvider";
 
-    private static final String DATABASE_NAME = "to_do.db";
-    static final int DATABASE_VERSION = 3;
+    /**
+     * Whether to log each call to the provider.  Enable with
+     * <code>adb shell setprop log.tag.ToDoProvider DEBUG</code>
+     * before the application starts.
+     */
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    static final String DATABASE_NAME = "to_do.db";
+    static final int DATABASE_VERSION = 8;
     static final String CATEGORY_TABLE_NAME = "category";
     private static final String METADATA_TABLE_NAME = "misc";
     static final String TODO_TABLE_NAME = "todo";
+    private static final String SEARCH_TABLE_NAME = "todo_search";
 
     /** Projection fields which are available in a category query */
     private static HashMap<String, String> categoryProjectionMap;
@@ -67,15 +87,269 @@ public class ToDoProvider extends ContentProvider {
     /** Projection fields which are available in a to-do item query */
     private static HashMap<String, String> itemProjectionMap;
 
+    /** Projection fields which are available in a to-do item search */
+    private static HashMap<String, String> searchProjectionMap;
+
+    /** Projection fields which are available when counting to-do items */
+    private static HashMap<String, String> countProjectionMap;
+
+    /** Projection fields which are available when counting by category */
+    private static HashMap<String, String> categoryCountProjectionMap;
+
     private static final int CATEGORIES = 3;
     private static final int CATEGORY_ID = 4;
     private static final int METADATA = 5;
     private static final int METADATUM_ID = 6;
     private static final int TODOS = 1;
     private static final int TODO_ID = 2;
+    private static final int TODO_SEARCH = 7;
+    private static final int TODO_COUNT = 8;
+    private static final int TODO_CATEGORY_COUNT = 9;
+
+    /** Names of the URI types for statistics, indexed by match code */
+    private static final String[] URI_TYPE_NAMES = {
+	"?", "todo", "todo/#", "categories", "categories/#",
+	"misc", "misc/#", "todo/search", "todo/count", "todo/count/categories"
+    };
 
     private static final UriMatcher sUriMatcher;
 
+    /** Tables for a query of to-do items which includes the category name */
+    static final String ITEM_CATEGORY_TABLES =
+	TODO_TABLE_NAME + " JOIN " + CATEGORY_TABLE_NAME
+	+ " ON (" + TODO_TABLE_NAME + "." + ToDoItem.CATEGORY_ID
+	+ " = " + CATEGORY_TABLE_NAME + "." + ToDoCategory._ID + ")";
+
+    /**
+     * The same join as {@link #ITEM_CATEGORY_TABLES}, but reading
+     * the category table first.  Used when items are sorted by category
+     * name, so that SQLite can read the categories in order from the
+     * category index and then each category&rsquo;s items in order
+     * from an item index, rather than sorting the whole list.
+     */
+    private static final String CATEGORY_ITEM_TABLES =
+	CATEGORY_TABLE_NAME + " CROSS JOIN " + TODO_TABLE_NAME
+	+ " ON (" + TODO_TABLE_NAME + "." + ToDoItem.CATEGORY_ID
+	+ " = " + CATEGORY_TABLE_NAME + "." + ToDoCategory._ID + ")";
+
+    /** Matches any reference to the category table in a query */
+    private static final Pattern CATEGORY_REFERENCE = Pattern.compile(
+	    "\\b(" + ToDoItem.CATEGORY_NAME + "|"
+	    + CATEGORY_TABLE_NAME + "\\s*\\.)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Index on the columns used by the To Do list filter
+     * for hiding completed, private, and other categories' items.
+     * This is only needed where SQLite can't create the
+     * {@link #TODO_LIST_INDEXES}, which start with the same columns.
+     */
+    private static final String TODO_FILTER_INDEX =
+	"CREATE INDEX IF NOT EXISTS todo_filter ON " + TODO_TABLE_NAME
+	+ " (" + ToDoItem.CHECKED + "," + ToDoItem.PRIVATE
+	+ "," + ToDoItem.CATEGORY_ID + ");";
+
+    /**
+     * Index on the time at which hidden items become visible,
+     * for the range scan used to hide items until shortly before
+     * they are due.
+     */
+    private static final String TODO_VISIBLE_INDEX =
+	"CREATE INDEX IF NOT EXISTS todo_visible ON " + TODO_TABLE_NAME
+	+ " (" + ToDoItem.CHECKED + "," + ToDoItem.VISIBLE_TIME + ");";
+
+    /**
+     * Partial index on the next alarm time of unchecked items,
+     * used by the alarm service to find the next alarm.
+     * Queries must include both terms of the WHERE clause
+     * for SQLite to use this index.
+     */
+    private static final String TODO_ALARM_INDEX =
+	"CREATE INDEX IF NOT EXISTS todo_alarm ON " + TODO_TABLE_NAME
+	+ " (" + ToDoItem.NEXT_ALARM_TIME + ") WHERE "
+	+ ToDoItem.CHECKED + " = 0 AND "
+	+ ToDoItem.NEXT_ALARM_TIME + " IS NOT NULL;";
+
+    /** Selects the items whose next alarm time may need to be set */
+    private static final String ALARM_SELECTION =
+	ToDoItem.NEXT_ALARM_TIME + " IS NOT NULL OR ("
+	+ ToDoItem.DUE_TIME + " IS NOT NULL AND "
+	+ ToDoItem.ALARM_DAYS_EARLIER + " IS NOT NULL)";
+
+    /** Columns used to compute the next alarm time */
+    private static final String[] ALARM_COLUMNS = {
+	ToDoItem._ID, ToDoItem.DUE_TIME, ToDoItem.ALARM_DAYS_EARLIER,
+	ToDoItem.ALARM_TIME, ToDoItem.NOTIFICATION_TIME,
+	ToDoItem.NEXT_ALARM_TIME
+    };
+
+    /** Number of milliseconds in a day */
+    private static final long ONE_DAY = 86400000L;
+
+    /**
+     * SQL expression which computes the {@link ToDoItem#VISIBLE_TIME}
+     * of an item from its other columns.  This must give the same
+     * result as {@link #computeVisibleTime(ContentValues)}.
+     */
+    private static final String VISIBLE_TIME_EXPRESSION =
+	"CASE WHEN " + ToDoItem.HIDE_DAYS_EARLIER + " IS NULL THEN 0 ELSE "
+	+ ToDoItem.DUE_TIME + " - " + ToDoItem.HIDE_DAYS_EARLIER
+	+ " * " + ONE_DAY + " END";
+
+    /** Sort key for the due date, with undated items last */
+    private static final String DUE_KEY =
+	"ifnull(" + ToDoItem.DUE_TIME + ", 9.22e+18)";
+
+    /** Sort key for the description */
+    private static final String DESCRIPTION_KEY =
+	"lower(" + ToDoItem.DESCRIPTION + ")";
+
+    /**
+     * Indexes serving the default list filter together with each of
+     * the pre-defined sort orders in {@link ToDoItem#USER_SORT_ORDERS}.
+     * Each one starts with the columns compared for equality when
+     * completed and private items are hidden (and the selected
+     * category, if any), followed by the terms of the sort order, so
+     * SQLite can read the list in order without sorting it.  SQLite
+     * will only use an index on an expression if the ORDER BY clause
+     * has exactly the same expression, so these must be kept in sync
+     * with the sort orders.  The orders by category name read the
+     * category index first and then the items of each category.
+     */
+    private static final String[] TODO_LIST_INDEXES = {
+	"CREATE INDEX IF NOT EXISTS todo_list_priority ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + ToDoItem.PRIORITY + ", " + DUE_KEY + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_due_priority ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + DUE_KEY + ", " + ToDoItem.PRIORITY + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_description ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + DESCRIPTION_KEY + ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_due ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + DUE_KEY + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS category_sort_name ON "
+	+ CATEGORY_TABLE_NAME + " (lower(" + ToDoCategory.NAME + "));",
+	"CREATE INDEX IF NOT EXISTS todo_list_category_priority ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + ToDoItem.CATEGORY_ID + ", " + ToDoItem.PRIORITY
+	+ ", " + DUE_KEY + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_category_due_priority ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + ToDoItem.CATEGORY_ID + ", " + DUE_KEY
+	+ ", " + ToDoItem.PRIORITY + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_category_priority_description ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + ToDoItem.CATEGORY_ID + ", " + ToDoItem.PRIORITY
+	+ ", " + DESCRIPTION_KEY + ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_category_due ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + ToDoItem.CATEGORY_ID + ", " + DUE_KEY + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+	"CREATE INDEX IF NOT EXISTS todo_list_category_description ON "
+	+ TODO_TABLE_NAME + " (" + ToDoItem.CHECKED + ", " + ToDoItem.PRIVATE
+	+ ", " + ToDoItem.CATEGORY_ID + ", " + DESCRIPTION_KEY
+	+ ", " + ToDoItem.MOD_TIME + ");",
+    };
+
+    /**
+     * Indexes from version 4 of the database which were replaced
+     * by {@link #TODO_LIST_INDEXES} in version 8.  They did not
+     * start with the filter columns, so SQLite still had to sort
+     * the filtered list.
+     */
+    private static final String[] OLD_SORT_INDEXES = {
+	"todo_filter", "todo_sort_priority", "todo_sort_due_priority",
+	"todo_sort_category_priority", "todo_sort_category_due",
+	"todo_sort_description", "todo_sort_due",
+    };
+
+    /**
+     * Full-text index of the description and note of each item
+     * which is not encrypted.  The document ID is the item ID.
+     */
+    private static final String SEARCH_TABLE =
+	"CREATE VIRTUAL TABLE " + SEARCH_TABLE_NAME + " USING fts4("
+	+ ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE
+	+ ", tokenize=unicode61);";
+
+    /**
+     * Triggers which keep the search index in sync with the item table.
+     * Encrypted items (private &gt; 1) are removed from the index.
+     */
+    private static final String[] SEARCH_TRIGGERS = {
+	"CREATE TRIGGER todo_search_insert AFTER INSERT ON "
+	+ TODO_TABLE_NAME + " WHEN ifnull(new." + ToDoItem.PRIVATE
+	+ ", 0) < 2 BEGIN INSERT INTO " + SEARCH_TABLE_NAME
+	+ " (docid, " + ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE
+	+ ") VALUES (new." + ToDoItem._ID + ", new." + ToDoItem.DESCRIPTION
+	+ ", new." + ToDoItem.NOTE + "); END;",
+	"CREATE TRIGGER todo_search_update AFTER UPDATE OF "
+	+ ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE + ", "
+	+ ToDoItem.PRIVATE + " ON " + TODO_TABLE_NAME + " BEGIN DELETE FROM "
+	+ SEARCH_TABLE_NAME + " WHERE docid = old." + ToDoItem._ID
+	+ "; INSERT INTO " + SEARCH_TABLE_NAME + " (docid, "
+	+ ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE + ") SELECT new."
+	+ ToDoItem._ID + ", new." + ToDoItem.DESCRIPTION + ", new."
+	+ ToDoItem.NOTE + " WHERE ifnull(new." + ToDoItem.PRIVATE
+	+ ", 0) < 2; END;",
+	"CREATE TRIGGER todo_search_delete AFTER DELETE ON "
+	+ TODO_TABLE_NAME + " BEGIN DELETE FROM " + SEARCH_TABLE_NAME
+	+ " WHERE docid = old." + ToDoItem._ID + "; END;",
+    };
+
+    /**
+     * Number of rows inserted by {@link #bulkInsert} between
+     * opportunities for other threads to use the database.
+     */
+    private static final int BULK_INSERT_YIELD_INTERVAL = 100;
+
+    /**
+     * Change notifications held back while a batch is running on the
+     * current thread, or <code>null</code> if no batch is in progress.
+     * Notifications are collected by directory URI so that a batch
+     * touching thousands of items results in a single notification.
+     */
+    private final ThreadLocal<Set<Uri>> pendingNotifications =
+	new ThreadLocal<Set<Uri>>();
+
+    /**
+     * Method name for {@link #call} which holds back change notifications
+     * from all threads until a matching {@link #METHOD_RESUME_NOTIFICATIONS}.
+     * Calls may be nested.  Use {@link #suspendNotifications(ContentResolver)}.
+     */
+    static final String METHOD_SUSPEND_NOTIFICATIONS = "suspendNotifications";
+
+    /**
+     * Method name for {@link #call} which ends a notification
+     * suspension scope.  When the last scope is closed,
+     * one notification is sent for each table that was changed.
+     * Use {@link #resumeNotifications(ContentResolver)}.
+     */
+    static final String METHOD_RESUME_NOTIFICATIONS = "resumeNotifications";
+
+    /**
+     * Method name for {@link #call} which recomputes the next alarm
+     * time of every item, as needed when the time zone changes.
+     * Use {@link #recomputeAlarms(ContentResolver)}.
+     */
+    static final String METHOD_RECOMPUTE_ALARMS = "recomputeAlarms";
+
+    /** The number of notification suspension scopes currently open */
+    private int suspendCount = 0;
+
+    /**
+     * Change notifications held back while suspended.
+     * Access to this and {@link #suspendCount} must be synchronized
+     * on this set.
+     */
+    private final Set<Uri> suspendedNotifications = new LinkedHashSet<Uri>();
+
     /**
      * This class helps open, create, and upgrade the database file.
      */
@@ -132,8 +406,14 @@ public class ToDoProvider extends ContentProvider {
                     + ToDoItem.REPEAT_MONTH + " INTEGER,"
                     + ToDoItem.REPEAT_END + " INTEGER,"
                     + ToDoItem.HIDE_DAYS_EARLIER + " INTEGER,"
-                    + ToDoItem.NOTIFICATION_TIME + " INTEGER"
+                    + ToDoItem.NOTIFICATION_TIME + " INTEGER,"
+                    + ToDoItem.VISIBLE_TIME + " INTEGER,"
+                    + ToDoItem.NEXT_ALARM_TIME + " INTEGER"
                     + ");");
+            createIndexes(db);
+            db.execSQL(TODO_VISIBLE_INDEX);
+            db.execSQL(TODO_ALARM_INDEX);
+            createSearchIndex(db);
 	}
 
 	@Override
@@ -150,11 +430,74 @@ public class ToDoProvider extends ContentProvider {
         	db.execSQL("ALTER TABLE " + TODO_TABLE_NAME + " ADD COLUMN "
         		+ ToDoItem.NOTIFICATION_TIME + " INTEGER;");
             }
+            if (oldVersion < 4) {
+        	createIndexes(db);
+            }
+            if (oldVersion < 5) {
+        	db.execSQL("ALTER TABLE " + TODO_TABLE_NAME + " ADD COLUMN "
+        		+ ToDoItem.VISIBLE_TIME + " INTEGER;");
+        	db.execSQL("UPDATE " + TODO_TABLE_NAME + " SET "
+        		+ ToDoItem.VISIBLE_TIME + " = "
+        		+ VISIBLE_TIME_EXPRESSION + ";");
+        	db.execSQL(TODO_VISIBLE_INDEX);
+            }
+            if (oldVersion < 6) {
+        	createSearchIndex(db);
+        	db.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + " (docid, "
+        		+ ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE
+        		+ ") SELECT " + ToDoItem._ID + ", "
+        		+ ToDoItem.DESCRIPTION + ", " + ToDoItem.NOTE
+        		+ " FROM " + TODO_TABLE_NAME + " WHERE ifnull("
+        		+ ToDoItem.PRIVATE + ", 0) < 2;");
+            }
+            if (oldVersion < 7) {
+        	db.execSQL("ALTER TABLE " + TODO_TABLE_NAME + " ADD COLUMN "
+        		+ ToDoItem.NEXT_ALARM_TIME + " INTEGER;");
+        	updateAlarmTimes(db, ALARM_SELECTION, null);
+        	db.execSQL(TODO_ALARM_INDEX);
+            }
+            if (oldVersion < 8) {
+        	for (String name : OLD_SORT_INDEXES)
+        	    db.execSQL("DROP INDEX IF EXISTS " + name + ";");
+        	createIndexes(db);
+            }
+	}
+
+	/** Create the full-text search table and its triggers */
+	private void createSearchIndex(SQLiteDatabase db) {
+	    db.execSQL(SEARCH_TABLE);
+	    for (String sql : SEARCH_TRIGGERS)
+		db.execSQL(sql);
+	}
+
+	/**
+	 * Create the indexes used by the To Do list.
+	 * Indexes on expressions require SQLite 3.9 (Android 7.0);
+	 * on older systems only the filter index is created.
+	 */
+	private void createIndexes(SQLiteDatabase db) {
+	    String version = DatabaseUtils.stringForQuery(db,
+		    "SELECT sqlite_version();", null);
+	    String[] parts = version.split("\\.");
+	    int major = Integer.parseInt(parts[0]);
+	    int minor = (parts.length > 1) ? Integer.parseInt(parts[1]) : 0;
+	    if ((major < 3) || ((major == 3) && (minor < 9))) {
+		Log.w(TAG, "SQLite " + version
+			+ " does not support indexes on expressions");
+		db.execSQL(TODO_FILTER_INDEX);
+		return;
+	    }
+	    for (String sql : TODO_LIST_INDEXES)
+		db.execSQL(sql);
 	}
     }
 
     private DatabaseHelper mOpenHelper;
 
+    /** Call counts and latencies, shown by <code>dumpsys</code> */
+    private final ProviderStatistics stats =
+	new ProviderStatistics(URI_TYPE_NAMES);
+
     @Override
     public boolean onCreate() {
 	Log.d(TAG, getClass().getSimpleName() + ".onCreate");
@@ -165,14 +508,28 @@ public class ToDoProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
 	    String[] selectionArgs, String sortOrder) {
-	Log.d(TAG, getClass().getSimpleName() + ".query(" + uri.toString()
-		+ ", " + Arrays.toString(projection)
-		+ ", \"" + selection + "\")");
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".query(" + uri.toString()
+		    + ", " + Arrays.toString(projection)
+		    + ", \"" + selection + "\")");
+	long startTime = SystemClock.elapsedRealtimeNanos();
+	int match = sUriMatcher.match(uri);
+	Cursor c = query(uri, match, projection,
+		selection, selectionArgs, sortOrder);
+	// SQLite runs the query when the cursor first fills its window,
+	// so the query is recorded when the caller first counts its rows.
+	return stats.recordQuery(c, match, startTime);
+    }
+
+    /** Query the database for the given type of URI */
+    private Cursor query(Uri uri, int match, String[] projection,
+	    String selection, String[] selectionArgs, String sortOrder) {
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
 
         // In case no sort order is specified set the default
         String orderBy;
-        switch (sUriMatcher.match(uri)) {
+        String groupBy = null;
+        switch (match) {
         case CATEGORIES:
             qb.setTables(CATEGORY_TABLE_NAME);
             qb.setProjectionMap(categoryProjectionMap);
@@ -202,23 +559,67 @@ public class ToDoProvider extends ContentProvider {
             break;
 
         case TODOS:
-            qb.setTables(TODO_TABLE_NAME + " JOIN " + CATEGORY_TABLE_NAME
-        	    + " ON (" + TODO_TABLE_NAME + "." + ToDoItem.CATEGORY_ID
-        	    + " = " + CATEGORY_TABLE_NAME + "." + ToDoCategory._ID + ")");
+            qb.setTables(itemTables(projection, selection, sortOrder));
             qb.setProjectionMap(itemProjectionMap);
             orderBy = ToDoItem.DEFAULT_SORT_ORDER;
             break;
 
         case TODO_ID:
-            qb.setTables(TODO_TABLE_NAME + " JOIN " + CATEGORY_TABLE_NAME
-        	    + " ON (" + TODO_TABLE_NAME + "." + ToDoItem.CATEGORY_ID
-        	    + " = " + CATEGORY_TABLE_NAME + "." + ToDoCategory._ID + ")");
+            qb.setTables(itemTables(projection, selection, sortOrder));
             qb.setProjectionMap(itemProjectionMap);
             qb.appendWhere(TODO_TABLE_NAME + "." + ToDoItem._ID
         	    + " = " + uri.getPathSegments().get(1));
             orderBy = null;
             break;
 
+        case TODO_SEARCH:
+            String terms = uri.getQueryParameter(ToDoItem.SEARCH_QUERY);
+            if (TextUtils.isEmpty(terms))
+        	throw new IllegalArgumentException("Missing search terms in "
+        		+ uri);
+            /*
+             * Run the full-text match in a sub-query so that the
+             * search table's columns don't conflict with the item's.
+             * The rank is the number of matching terms, counted from
+             * the list of match offsets (four numbers per match).
+             */
+            qb.setTables(ITEM_CATEGORY_TABLES + " JOIN (SELECT docid, snippet("
+        	    + SEARCH_TABLE_NAME + ", '<b>', '</b>', '...', -1, 12) AS "
+        	    + ToDoItem.SEARCH_SNIPPET + ", (length(offsets("
+        	    + SEARCH_TABLE_NAME + ")) - length(replace(offsets("
+        	    + SEARCH_TABLE_NAME + "), ' ', '')) + 1) / 4 AS "
+        	    + ToDoItem.SEARCH_RANK + " FROM " + SEARCH_TABLE_NAME
+        	    + " WHERE " + SEARCH_TABLE_NAME + " MATCH ?) AS matches ON ("
+        	    + TODO_TABLE_NAME + "." + ToDoItem._ID + " = matches.docid)");
+            qb.setProjectionMap(searchProjectionMap);
+            // The search terms come before any selection arguments
+            if (selectionArgs == null) {
+        	selectionArgs = new String[] { terms };
+            } else {
+        	String[] args = new String[selectionArgs.length + 1];
+        	args[0] = terms;
+        	System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        	selectionArgs = args;
+            }
+            orderBy = "matches." + ToDoItem.SEARCH_RANK + " DESC, "
+        	    + ToDoItem.MOD_TIME + " DESC";
+            break;
+
+        case TODO_COUNT:
+            qb.setTables(itemTables(new String[] { ToDoItem._COUNT },
+        	    selection, sortOrder));
+            qb.setProjectionMap(countProjectionMap);
+            orderBy = null;
+            break;
+
+        case TODO_CATEGORY_COUNT:
+            qb.setTables(ITEM_CATEGORY_TABLES);
+            qb.setProjectionMap(categoryCountProjectionMap);
+            groupBy = TODO_TABLE_NAME + "." + ToDoItem.CATEGORY_ID;
+            orderBy = "lower(" + CATEGORY_TABLE_NAME + "."
+        	    + ToDoCategory.NAME + ")";
+            break;
+
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -228,17 +629,317 @@ public class ToDoProvider extends ContentProvider {
 
         // Get the database and run the query
         SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        Cursor c = qb.query(db, projection, selection, selectionArgs, null, null, orderBy);
+        Cursor c;
+        if ((match == TODOS) &&
+        	(uri.getQueryParameter(ToDoItem.QUERY_LIMIT) != null))
+            c = queryPage(db, qb, uri, projection,
+        	    selection, selectionArgs, orderBy);
+        else
+            c = qb.query(db, projection, selection, selectionArgs, groupBy, null, orderBy);
 
         // Tell the cursor what uri to watch, so it knows when its source data changes
         c.setNotificationUri(getContext().getContentResolver(), uri);
         return c;
     }
 
+    /**
+     * Determine which tables are needed for a query of to-do items.
+     * The category table is only joined if the query refers to it,
+     * either by the category name column or by table name, and is
+     * read first if the items are sorted by category.
+     * A <code>null</code> projection includes the category name.
+     */
+    static String itemTables(String[] projection,
+	    String selection, String sortOrder) {
+	if ((sortOrder != null) &&
+		CATEGORY_REFERENCE.matcher(sortOrder).find())
+	    return CATEGORY_ITEM_TABLES;
+	if ((projection == null) ||
+		Arrays.asList(projection).contains(ToDoItem.CATEGORY_NAME))
+	    return ITEM_CATEGORY_TABLES;
+	if ((selection != null) &&
+		CATEGORY_REFERENCE.matcher(selection).find())
+	    return ITEM_CATEGORY_TABLES;
+	return TODO_TABLE_NAME;
+    }
+
+    /**
+     * Query one page of To Do items.  The page size is given by the
+     * {@link ToDoItem#QUERY_LIMIT} parameter of the URI, and the
+     * page starts after the item whose {@link ToDoItem#PAGE_KEY}
+     * is given by the {@link ToDoItem#QUERY_AFTER} parameter.
+     * <p>
+     * Rather than skipping over an offset, this compares each term
+     * of the sort order with the key of the previous page's last item
+     * so that SQLite can seek directly to the start of the page.
+     * The item ID is added as the final sort term to make the order
+     * unique.
+     *
+     * @throws IllegalArgumentException if the limit or the key is invalid.
+     */
+    private Cursor queryPage(SQLiteDatabase db, SQLiteQueryBuilder qb,
+	    Uri uri, String[] projection, String selection,
+	    String[] selectionArgs, String orderBy) {
+	String limit = Integer.toString(Integer.parseInt(
+		uri.getQueryParameter(ToDoItem.QUERY_LIMIT)));
+
+	// Break up the sort order into its terms
+	List<String> terms = new ArrayList<String>();
+	List<Boolean> descending = new ArrayList<Boolean>();
+	for (String term : splitOrderBy(orderBy)) {
+	    String upper = term.toUpperCase(Locale.US);
+	    boolean desc = upper.endsWith(" DESC");
+	    if (desc || upper.endsWith(" ASC"))
+		term = term.substring(0, term.lastIndexOf(' ')).trim();
+	    // Result column aliases can't be used inside other expressions
+	    terms.add(term.replaceAll("\\b" + ToDoItem.CATEGORY_NAME + "\\b",
+		    CATEGORY_TABLE_NAME + "." + ToDoCategory.NAME));
+	    descending.add(desc);
+	}
+	String idTerm = TODO_TABLE_NAME + "." + ToDoItem._ID;
+	if (terms.isEmpty() || !(terms.get(terms.size() - 1).equals(idTerm) ||
+		terms.get(terms.size() - 1).equals(ToDoItem._ID))) {
+	    terms.add(idTerm);
+	    descending.add(false);
+	}
+
+	/*
+	 * Add the page key to the result columns.  Text is written in
+	 * hex rather than quoted, because quote() stops at a NUL; that
+	 * happens when lower() is applied to an encrypted description,
+	 * which is a blob.  Blobs are quoted in their X'...' form.
+	 */
+	StringBuilder sb = new StringBuilder();
+	for (String term : terms) {
+	    if (sb.length() > 0)
+		sb.append(" || ',' || ");
+	    sb.append("CASE typeof(").append(term)
+		.append(") WHEN 'text' THEN 'T' || hex(").append(term)
+		.append(") ELSE quote(").append(term).append(") END");
+	}
+	HashMap<String,String> pageProjectionMap =
+	    new HashMap<String,String>(itemProjectionMap);
+	pageProjectionMap.put(ToDoItem.PAGE_KEY,
+		sb.append(" AS ").append(ToDoItem.PAGE_KEY).toString());
+	qb.setProjectionMap(pageProjectionMap);
+	if (projection == null) {
+	    projection = pageProjectionMap.keySet().toArray(
+		    new String[pageProjectionMap.size()]);
+	} else if (!Arrays.asList(projection).contains(ToDoItem.PAGE_KEY)) {
+	    projection = Arrays.copyOf(projection, projection.length + 1);
+	    projection[projection.length - 1] = ToDoItem.PAGE_KEY;
+	}
+
+	List<String> args = new ArrayList<String>();
+	if (selectionArgs != null)
+	    args.addAll(Arrays.asList(selectionArgs));
+	String after = uri.getQueryParameter(ToDoItem.QUERY_AFTER);
+	if (after != null) {
+	    List<Object> key = parsePageKey(after);
+	    if (key.size() != terms.size())
+		throw new IllegalArgumentException("Page key " + after
+			+ " does not match the sort order " + orderBy);
+	    /*
+	     * Build (t0 > k0) OR (t0 = k0 AND t1 > k1) OR ...
+	     * NULL sorts before any other value.
+	     */
+	    sb.setLength(0);
+	    for (int i = 0; i < terms.size(); i++) {
+		if (i > 0)
+		    sb.append(" OR ");
+		sb.append('(');
+		for (int j = 0; j < i; j++) {
+		    appendKeyComparison(sb, args, terms.get(j), "=", key.get(j));
+		    sb.append(" AND ");
+		}
+		appendKeyComparison(sb, args, terms.get(i),
+			descending.get(i) ? "<" : ">", key.get(i));
+		sb.append(')');
+	    }
+	    selection = TextUtils.isEmpty(selection) ? sb.toString()
+		    : ("(" + selection + ") AND (" + sb + ")");
+	}
+
+	sb.setLength(0);
+	for (int i = 0; i < terms.size(); i++) {
+	    if (i > 0)
+		sb.append(", ");
+	    sb.append(terms.get(i));
+	    if (descending.get(i))
+		sb.append(" DESC");
+	}
+
+	return qb.query(db, projection, selection,
+		args.toArray(new String[args.size()]),
+		null, null, sb.toString(), limit);
+    }
+
+    /**
+     * Split an ORDER BY clause into its terms,
+     * ignoring commas inside parentheses or quotes.
+     */
+    private static List<String> splitOrderBy(String orderBy) {
+	List<String> terms = new ArrayList<String>();
+	if (TextUtils.isEmpty(orderBy))
+	    return terms;
+	int depth = 0;
+	char quote = 0;
+	int start = 0;
+	for (int i = 0; i < orderBy.length(); i++) {
+	    char ch = orderBy.charAt(i);
+	    if (quote != 0) {
+		if (ch == quote)
+		    quote = 0;
+	    } else if ((ch == '\'') || (ch == '"')) {
+		quote = ch;
+	    } else if (ch == '(') {
+		depth++;
+	    } else if (ch == ')') {
+		depth--;
+	    } else if ((ch == ',') && (depth == 0)) {
+		terms.add(orderBy.substring(start, i).trim());
+		start = i + 1;
+	    }
+	}
+	terms.add(orderBy.substring(start).trim());
+	return terms;
+    }
+
+    /**
+     * A text or blob value from a page key, kept as the SQL literal
+     * which reproduces its exact bytes.  These are written into the
+     * query rather than bound, since a bound string would lose
+     * anything after a NUL and cannot be a blob.
+     */
+    private static class KeyLiteral {
+	final String sql;
+	KeyLiteral(String sql) { this.sql = sql; }
+    }
+
+    /** Pattern of the hex digits in a text or blob page key value */
+    private static final Pattern HEX_DIGITS =
+	Pattern.compile("(?:[0-9A-Fa-f]{2})*");
+
+    /**
+     * Parse a page key, which consists of SQL literals as returned
+     * by the quote() function, or "T" followed by the hex() of a text
+     * value, separated by commas.
+     *
+     * @return a list of the values in the key, which may be
+     * {@link Long}, {@link Double}, {@link String}, {@link KeyLiteral},
+     * or <code>null</code>.
+     *
+     * @throws IllegalArgumentException if the key cannot be parsed.
+     */
+    private static List<Object> parsePageKey(String key) {
+	List<Object> values = new ArrayList<Object>();
+	int i = 0;
+	try {
+	    while (true) {
+		if (key.startsWith("NULL", i)) {
+		    values.add(null);
+		    i += 4;
+		} else if (key.charAt(i) == 'T') {
+		    int end = key.indexOf(',', i);
+		    if (end < 0)
+			end = key.length();
+		    String hex = key.substring(i + 1, end);
+		    if (!HEX_DIGITS.matcher(hex).matches())
+			throw new IllegalArgumentException(
+				"Invalid page key: " + key);
+		    values.add(new KeyLiteral(
+			    "CAST(X'" + hex + "' AS TEXT)"));
+		    i = end;
+		} else if (key.startsWith("X'", i)) {
+		    int end = key.indexOf('\'', i + 2);
+		    String hex = key.substring(i + 2, end);
+		    if (!HEX_DIGITS.matcher(hex).matches())
+			throw new IllegalArgumentException(
+				"Invalid page key: " + key);
+		    values.add(new KeyLiteral("X'" + hex + "'"));
+		    i = end + 1;
+		} else if (key.charAt(i) == '\'') {
+		    StringBuilder sb = new StringBuilder();
+		    i++;
+		    while (true) {
+			char ch = key.charAt(i++);
+			if (ch == '\'') {
+			    if ((i < key.length()) && (key.charAt(i) == '\''))
+				i++;
+			    else
+				break;
+			}
+			sb.append(ch);
+		    }
+		    values.add(sb.toString());
+		} else {
+		    int end = key.indexOf(',', i);
+		    if (end < 0)
+			end = key.length();
+		    String number = key.substring(i, end);
+		    if (number.matches("-?\\d+"))
+			values.add(Long.valueOf(number));
+		    else
+			values.add(Double.valueOf(number));
+		    i = end;
+		}
+		if (i >= key.length())
+		    return values;
+		if (key.charAt(i++) != ',')
+		    throw new IllegalArgumentException(
+			    "Invalid page key: " + key);
+	    }
+	} catch (IndexOutOfBoundsException iobx) {
+	    throw new IllegalArgumentException("Invalid page key: " + key);
+	} catch (NumberFormatException nfx) {
+	    throw new IllegalArgumentException("Invalid page key: " + key);
+	}
+    }
+
+    /**
+     * Append a comparison between a sort term and a value from
+     * a page key, binding the value as an argument of the same type
+     * or writing it in as a literal if it came from text or a blob.
+     *
+     * @param op one of "=", "&lt;", or "&gt;"
+     */
+    private static void appendKeyComparison(StringBuilder sb,
+	    List<String> args, String term, String op, Object value) {
+	if (value == null) {
+	    // NULL comes first in ascending order
+	    if (op.equals("="))
+		sb.append(term).append(" IS NULL");
+	    else if (op.equals(">"))
+		sb.append(term).append(" IS NOT NULL");
+	    else
+		sb.append('0');
+	    return;
+	}
+	if (op.equals("<"))
+	    sb.append('(').append(term).append(" IS NULL OR ");
+	sb.append(term).append(' ').append(op).append(' ');
+	if (value instanceof KeyLiteral) {
+	    sb.append(((KeyLiteral) value).sql);
+	    if (op.equals("<"))
+		sb.append(')');
+	    return;
+	}
+	if (value instanceof Long)
+	    sb.append("CAST(? AS INTEGER)");
+	else if (value instanceof Double)
+	    sb.append("CAST(? AS REAL)");
+	else
+	    sb.append('?');
+	args.add(value.toString());
+	if (op.equals("<"))
+	    sb.append(')');
+    }
+
     @Override
     public String getType(Uri uri) {
-	Log.d(TAG, getClass().getSimpleName() + ".getType("
-		+ uri.toString() + ")");
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".getType("
+		    + uri.toString() + ")");
         switch (sUriMatcher.match(uri)) {
         case CATEGORIES:
             return ToDoCategory.CONTENT_TYPE;
@@ -258,6 +959,13 @@ public class ToDoProvider extends ContentProvider {
         case TODO_ID:
             return ToDoItem.CONTENT_ITEM_TYPE;
 
+        case TODO_SEARCH:
+            return ToDoItem.CONTENT_TYPE;
+
+        case TODO_COUNT:
+        case TODO_CATEGORY_COUNT:
+            return ToDoItem.COUNT_TYPE;
+
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -265,8 +973,18 @@ public class ToDoProvider extends ContentProvider {
 
     @Override
     public Uri insert(Uri uri, ContentValues initialValues) {
-	Log.d(TAG, getClass().getSimpleName() + ".insert(" + uri.toString()
-		+ "," + initialValues + ")");
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".insert(" + uri.toString()
+		    + "," + initialValues + ")");
+	long startTime = SystemClock.elapsedRealtimeNanos();
+	int match = sUriMatcher.match(uri);
+	Uri newUri = insert(uri, match, initialValues);
+	stats.record(ProviderStatistics.INSERT, match, startTime, 1);
+	return newUri;
+    }
+
+    /** Insert a row for the given type of URI */
+    private Uri insert(Uri uri, int match, ContentValues initialValues) {
 	ContentValues values;
         if (initialValues != null) {
             values = new ContentValues(initialValues);
@@ -278,7 +996,7 @@ public class ToDoProvider extends ContentProvider {
         long rowId;
 
         // Validate the requested uri
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
 
@@ -293,7 +1011,7 @@ public class ToDoProvider extends ContentProvider {
             if (rowId > 0) {
         	Uri categoryUri = ContentUris.withAppendedId(
         		ToDoCategory.CONTENT_URI, rowId);
-        	getContext().getContentResolver().notifyChange(categoryUri, null);
+        	notifyChange(categoryUri);
         	return categoryUri;
             }
             break;
@@ -308,7 +1026,7 @@ public class ToDoProvider extends ContentProvider {
             if (rowId > 0) {
         	Uri datUri = ContentUris.withAppendedId(
         		ToDoMetadata.CONTENT_URI, rowId);
-        	getContext().getContentResolver().notifyChange(datUri, null);
+        	notifyChange(datUri);
         	return datUri;
             }
             break;
@@ -342,11 +1060,18 @@ public class ToDoProvider extends ContentProvider {
             if (values.containsKey(ToDoItem.REPEAT_INTERVAL) == false)
         	values.put(ToDoItem.REPEAT_INTERVAL, ToDoItem.REPEAT_NONE);
 
+            computeVisibleTime(values);
+            values.put(ToDoItem.NEXT_ALARM_TIME, computeAlarmTime(
+        	    values.getAsLong(ToDoItem.DUE_TIME),
+        	    values.getAsInteger(ToDoItem.ALARM_DAYS_EARLIER),
+        	    values.getAsLong(ToDoItem.ALARM_TIME),
+        	    values.getAsLong(ToDoItem.NOTIFICATION_TIME)));
+
             db = mOpenHelper.getWritableDatabase();
             rowId = db.insert(TODO_TABLE_NAME, ToDoItem.DESCRIPTION, values);
             if (rowId > 0) {
         	Uri todoUri = ContentUris.withAppendedId(ToDoItem.CONTENT_URI, rowId);
-        	getContext().getContentResolver().notifyChange(todoUri, null);
+        	notifyChange(todoUri);
         	return todoUri;
             }
             break;
@@ -357,44 +1082,72 @@ public class ToDoProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String where, String[] whereArgs) {
-	Log.d(TAG, getClass().getSimpleName() + ".delete(" + uri.toString() + ")");
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".delete(" + uri.toString() + ")");
+	long startTime = SystemClock.elapsedRealtimeNanos();
+	int match = sUriMatcher.match(uri);
+	int count = delete(uri, match, where, whereArgs);
+	stats.record(ProviderStatistics.DELETE, match, startTime, count);
+	return count;
+    }
+
+    /** Delete rows for the given type of URI */
+    private int delete(Uri uri, int match, String where, String[] whereArgs) {
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int count;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
         case CATEGORIES:
             // Make sure we don't delete the default category
             where = ToDoCategory._ID + " != " + ToDoCategory.UNFILED + (
         	    TextUtils.isEmpty(where) ? "" : (" AND (" + where + ")"));
-            count = db.delete(CATEGORY_TABLE_NAME, where, whereArgs);
-            if (count > 0) {
-        	// Change the category of all To Do items to Unfiled
-        	ContentValues categoryUpdate = new ContentValues();
-        	categoryUpdate.put(ToDoItem.CATEGORY_ID, ToDoCategory.UNFILED);
-        	update(ToDoItem.CONTENT_URI, categoryUpdate, null, null);
+            // Hold back the item change notification until we're done
+            boolean outermost = beginBatch();
+            db.beginTransaction();
+            try {
+        	count = db.delete(CATEGORY_TABLE_NAME, where, whereArgs);
+        	if (count > 0) {
+        	    // Change the category of all To Do items to Unfiled
+        	    ContentValues categoryUpdate = new ContentValues();
+        	    categoryUpdate.put(ToDoItem.CATEGORY_ID, ToDoCategory.UNFILED);
+        	    update(ToDoItem.CONTENT_URI, categoryUpdate, null, null);
+        	}
+        	notifyChange(uri);
+        	db.setTransactionSuccessful();
+            } finally {
+        	db.endTransaction();
+        	if (outermost)
+        	    endBatch();
             }
-            break;
+            return count;
 
         case CATEGORY_ID:
             long categoryId = Long.parseLong(uri.getPathSegments().get(1));
             if (categoryId == ToDoCategory.UNFILED)
         	// Don't delete the default category
         	return 0;
+            outermost = beginBatch();
             db.beginTransaction();
-            count = db.delete(CATEGORY_TABLE_NAME,
-        	    ToDoCategory._ID + " = " + categoryId
-        	    + (TextUtils.isEmpty(where) ? "" : (" AND (" + where + ")")),
-        	    whereArgs);
-            if (count > 0) {
-        	// Change the category of all To Do items
-        	// that were in this category to Unfiled
-        	ContentValues categoryUpdate = new ContentValues();
-        	categoryUpdate.put(ToDoItem.CATEGORY_ID, ToDoCategory.UNFILED);
-        	update(ToDoItem.CONTENT_URI, categoryUpdate,
-        		ToDoItem.CATEGORY_ID + "=" + categoryId, null);
+            try {
+        	count = db.delete(CATEGORY_TABLE_NAME,
+        		ToDoCategory._ID + " = " + categoryId
+        		+ (TextUtils.isEmpty(where) ? "" : (" AND (" + where + ")")),
+        		whereArgs);
+        	if (count > 0) {
+        	    // Change the category of all To Do items
+        	    // that were in this category to Unfiled
+        	    ContentValues categoryUpdate = new ContentValues();
+        	    categoryUpdate.put(ToDoItem.CATEGORY_ID, ToDoCategory.UNFILED);
+        	    update(ToDoItem.CONTENT_URI, categoryUpdate,
+        		    ToDoItem.CATEGORY_ID + "=" + categoryId, null);
+        	}
+        	notifyChange(uri);
+        	db.setTransactionSuccessful();
+            } finally {
+        	db.endTransaction();
+        	if (outermost)
+        	    endBatch();
             }
-            db.setTransactionSuccessful();
-            db.endTransaction();
-            break;
+            return count;
 
         case METADATA:
             count = db.delete(METADATA_TABLE_NAME, where, whereArgs);
@@ -422,18 +1175,29 @@ public class ToDoProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return count;
     }
 
     @Override
     public int update(Uri uri, ContentValues values, String where,
 	    String[] whereArgs) {
-	Log.d(TAG, getClass().getSimpleName() + ".update(" + uri.toString()
-		+ "," + values + ")");
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".update(" + uri.toString()
+		    + "," + values + ")");
+	long startTime = SystemClock.elapsedRealtimeNanos();
+	int match = sUriMatcher.match(uri);
+	int count = update(uri, match, values, where, whereArgs);
+	stats.record(ProviderStatistics.UPDATE, match, startTime, count);
+	return count;
+    }
+
+    /** Update rows for the given type of URI */
+    private int update(Uri uri, int match, ContentValues values,
+	    String where, String[] whereArgs) {
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int count;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
         case CATEGORIES:
             throw new UnsupportedOperationException(
         	    "Cannot modify multiple categories");
@@ -460,25 +1224,460 @@ public class ToDoProvider extends ContentProvider {
             break;
 
         case TODOS:
-            count = db.update(TODO_TABLE_NAME, values, where, whereArgs);
+            if (!values.containsKey(ToDoItem.DUE_TIME) &&
+        	    !values.containsKey(ToDoItem.HIDE_DAYS_EARLIER) &&
+        	    !changesAlarm(values)) {
+        	count = db.update(TODO_TABLE_NAME, values, where, whereArgs);
+        	break;
+            }
+            db.beginTransaction();
+            try {
+        	// Find the matching items first, since the WHERE clause
+        	// may no longer match them once they have been changed,
+        	// and only recompute the derived columns of those items.
+        	long[] ids = queryItemIds(db, where, whereArgs);
+        	count = 0;
+        	for (int start = 0; start < ids.length;
+        		start += ID_SELECTION_CHUNK) {
+        	    String idSelection = idSelection(ids, start,
+        		    Math.min(start + ID_SELECTION_CHUNK, ids.length));
+        	    count += db.update(TODO_TABLE_NAME, values,
+        		    idSelection, null);
+        	    if (values.containsKey(ToDoItem.DUE_TIME) ||
+        		    values.containsKey(ToDoItem.HIDE_DAYS_EARLIER))
+        		db.execSQL("UPDATE " + TODO_TABLE_NAME + " SET "
+        			+ ToDoItem.VISIBLE_TIME + " = "
+        			+ VISIBLE_TIME_EXPRESSION + " WHERE "
+        			+ idSelection + ";");
+        	    if (changesAlarm(values))
+        		updateAlarmTimes(db, idSelection, null);
+        	}
+        	db.setTransactionSuccessful();
+            } finally {
+        	db.endTransaction();
+            }
             break;
 
         case TODO_ID:
             long todoId = Long.parseLong(uri.getPathSegments().get(1));
-            count = db.update(TODO_TABLE_NAME, values,
-        	    ToDoItem._ID + " = " + todoId
-                    + (!TextUtils.isEmpty(where) ? " AND (" + where + ')' : ""),
-                    whereArgs);
+            db.beginTransaction();
+            try {
+        	count = db.update(TODO_TABLE_NAME, values,
+        		ToDoItem._ID + " = " + todoId
+        		+ (!TextUtils.isEmpty(where) ? " AND (" + where + ')' : ""),
+        		whereArgs);
+        	if ((count > 0) &&
+        		(values.containsKey(ToDoItem.DUE_TIME) ||
+        		 values.containsKey(ToDoItem.HIDE_DAYS_EARLIER)))
+        	    db.execSQL("UPDATE " + TODO_TABLE_NAME + " SET "
+        		    + ToDoItem.VISIBLE_TIME + " = "
+        		    + VISIBLE_TIME_EXPRESSION + " WHERE "
+        		    + ToDoItem._ID + " = " + todoId + ";");
+        	if ((count > 0) && changesAlarm(values))
+        	    updateAlarmTimes(db, ToDoItem._ID + " = " + todoId, null);
+        	db.setTransactionSuccessful();
+            } finally {
+        	db.endTransaction();
+            }
             break;
 
         default:
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return count;
     }
 
+    /**
+     * The number of item ID&rsquo;s to put in one
+     * <code>IN</code> clause when updating a set of items
+     */
+    private static final int ID_SELECTION_CHUNK = 500;
+
+    /** @return the ID&rsquo;s of the items matching a selection */
+    private static long[] queryItemIds(SQLiteDatabase db,
+	    String selection, String[] selectionArgs) {
+	Cursor c = db.query(TODO_TABLE_NAME, new String[] { ToDoItem._ID },
+		selection, selectionArgs, null, null, null);
+	try {
+	    long[] ids = new long[c.getCount()];
+	    int n = 0;
+	    while (c.moveToNext() && (n < ids.length))
+		ids[n++] = c.getLong(0);
+	    return (n == ids.length) ? ids : Arrays.copyOf(ids, n);
+	} finally {
+	    c.close();
+	}
+    }
+
+    /**
+     * @return a selection of the items whose ID&rsquo;s are
+     * in the given range of an array
+     */
+    private static String idSelection(long[] ids, int start, int end) {
+	StringBuilder sb = new StringBuilder(ToDoItem._ID).append(" IN (");
+	for (int i = start; i < end; i++) {
+	    if (i > start)
+		sb.append(',');
+	    sb.append(ids[i]);
+	}
+	return sb.append(')').toString();
+    }
+
+    /**
+     * Set the {@link ToDoItem#VISIBLE_TIME} of a new item
+     * from its due date and the number of days to hide it.
+     * This must give the same result as {@link #VISIBLE_TIME_EXPRESSION}.
+     */
+    private static void computeVisibleTime(ContentValues values) {
+	Integer hideDays = values.getAsInteger(ToDoItem.HIDE_DAYS_EARLIER);
+	Long due = values.getAsLong(ToDoItem.DUE_TIME);
+	if (hideDays == null)
+	    values.put(ToDoItem.VISIBLE_TIME, 0L);
+	else if (due == null)
+	    values.putNull(ToDoItem.VISIBLE_TIME);
+	else
+	    values.put(ToDoItem.VISIBLE_TIME, due - hideDays * ONE_DAY);
+    }
+
+    /**
+     * @return whether the given values change any of the fields
+     * that determine an item's {@link ToDoItem#NEXT_ALARM_TIME}.
+     */
+    private static boolean changesAlarm(ContentValues values) {
+	return values.containsKey(ToDoItem.DUE_TIME) ||
+	    values.containsKey(ToDoItem.ALARM_DAYS_EARLIER) ||
+	    values.containsKey(ToDoItem.ALARM_TIME) ||
+	    values.containsKey(ToDoItem.NOTIFICATION_TIME);
+    }
+
+    /**
+     * Compute the time of an item's next alarm.  The alarm goes off
+     * at the alarm time of day, starting the given number of days
+     * before the item is due, and is repeated daily after the
+     * last notification.  This depends on the time zone,
+     * so it is computed here rather than in SQL.
+     *
+     * @param due the item's due date, or <code>null</code>
+     * @param daysEarlier the number of days before the due date
+     * to start the alarm, or <code>null</code> if there is no alarm
+     * @param alarmTime the time of day of the alarm in milliseconds
+     * @param notificationTime the last time the user was notified
+     *
+     * @return the time of the next alarm,
+     * or <code>null</code> if the item has no alarm.
+     */
+    static Long computeAlarmTime(Long due, Integer daysEarlier,
+	    Long alarmTime, Long notificationTime) {
+	if ((due == null) || (daysEarlier == null))
+	    return null;
+	long timeOfDay = (alarmTime == null) ? 0 : alarmTime;
+	Calendar cal = Calendar.getInstance();
+	cal.setTimeInMillis(due);
+	cal.add(Calendar.DATE, -daysEarlier);
+	cal.set(Calendar.HOUR_OF_DAY, (int) (timeOfDay / 3600000L));
+	cal.set(Calendar.MINUTE, (int) (timeOfDay / 60000L) % 60);
+	cal.set(Calendar.SECOND, (int) (timeOfDay / 1000L) % 60);
+	cal.set(Calendar.MILLISECOND, (int) (timeOfDay % 1000));
+	if (notificationTime != null) {
+	    if (notificationTime - cal.getTimeInMillis() > ONE_DAY)
+		cal.add(Calendar.DATE, (int) ((notificationTime
+			- cal.getTimeInMillis()) / ONE_DAY) - 1);
+	    while (cal.getTimeInMillis() < notificationTime)
+		cal.add(Calendar.DATE, 1);
+	}
+	return cal.getTimeInMillis();
+    }
+
+    /**
+     * Recompute the {@link ToDoItem#NEXT_ALARM_TIME}
+     * of the selected items, changing only those that differ.
+     */
+    private static void updateAlarmTimes(SQLiteDatabase db,
+	    String selection, String[] selectionArgs) {
+	Cursor c = db.query(TODO_TABLE_NAME, ALARM_COLUMNS,
+		selection, selectionArgs, null, null, null);
+	try {
+	    ContentValues values = new ContentValues();
+	    while (c.moveToNext()) {
+		Long next = computeAlarmTime(
+			c.isNull(1) ? null : c.getLong(1),
+			c.isNull(2) ? null : c.getInt(2),
+			c.isNull(3) ? null : c.getLong(3),
+			c.isNull(4) ? null : c.getLong(4));
+		Long old = c.isNull(5) ? null : c.getLong(5);
+		if ((next == null) ? (old == null) : next.equals(old))
+		    continue;
+		values.put(ToDoItem.NEXT_ALARM_TIME, next);
+		db.update(TODO_TABLE_NAME, values,
+			ToDoItem._ID + " = " + c.getLong(0), null);
+	    }
+	} finally {
+	    c.close();
+	}
+    }
+
+    /**
+     * Insert a group of rows in a single transaction.
+     * Observers are notified once when the whole group
+     * has been committed rather than once for every row.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".bulkInsert("
+		    + uri.toString() + ", [" + values.length + " rows])");
+	SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+	boolean outermost = beginBatch();
+	int count = 0;
+	try {
+	    db.beginTransaction();
+	    try {
+		for (ContentValues row : values) {
+		    insert(uri, row);
+		    if ((++count % BULK_INSERT_YIELD_INTERVAL) == 0)
+			db.yieldIfContendedSafely();
+		}
+		db.setTransactionSuccessful();
+	    } finally {
+		db.endTransaction();
+	    }
+	} finally {
+	    if (outermost)
+		endBatch();
+	}
+	return count;
+    }
+
+    /**
+     * Apply a list of operations in a single transaction.
+     * The transaction is briefly released at any operation which
+     * allows yielding, so a long batch doesn't lock out other readers.
+     * Since a yield commits everything before it, callers which split
+     * their work into batches themselves should allow it only on the
+     * first operation of each batch, where it is ignored; otherwise
+     * a contended batch may be committed one row at a time.
+     * Observers are notified once per table when the batch is finished.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(
+	    ArrayList<ContentProviderOperation> operations)
+		throws OperationApplicationException {
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".applyBatch(["
+		    + operations.size() + " operations])");
+	SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+	boolean outermost = beginBatch();
+	try {
+	    db.beginTransaction();
+	    try {
+		ContentProviderResult[] results =
+		    new ContentProviderResult[operations.size()];
+		for (int i = 0; i < results.length; i++) {
+		    ContentProviderOperation op = operations.get(i);
+		    if ((i > 0) && op.isYieldAllowed())
+			db.yieldIfContendedSafely();
+		    results[i] = op.apply(this, results, i);
+		}
+		db.setTransactionSuccessful();
+		return results;
+	    } finally {
+		db.endTransaction();
+	    }
+	} finally {
+	    if (outermost)
+		endBatch();
+	}
+    }
+
+    /**
+     * Start collecting change notifications on this thread.
+     *
+     * @return true if this starts a new batch, false if
+     * we are already inside one (e.g. a nested call).
+     */
+    private boolean beginBatch() {
+	if (pendingNotifications.get() != null)
+	    return false;
+	pendingNotifications.set(new LinkedHashSet<Uri>());
+	return true;
+    }
+
+    /**
+     * Stop collecting change notifications on this thread
+     * and send out the ones which were held back.
+     * This is done even if the batch failed, since parts of it
+     * may have been committed at a yield point.
+     */
+    private void endBatch() {
+	Set<Uri> pending = pendingNotifications.get();
+	pendingNotifications.set(null);
+	for (Uri uri : pending)
+	    notifyChange(uri);
+    }
+
+    /**
+     * Notify observers of a change to the given URI, or hold
+     * the notification back if a batch is in progress or
+     * notifications have been suspended.
+     */
+    private void notifyChange(Uri uri) {
+	Set<Uri> pending = pendingNotifications.get();
+	if (pending != null) {
+	    pending.add(getDirectoryUri(uri));
+	    return;
+	}
+	synchronized (suspendedNotifications) {
+	    if (suspendCount > 0) {
+		suspendedNotifications.add(getDirectoryUri(uri));
+		return;
+	    }
+	}
+	getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * @return the URI of the table containing the given URI.
+     * Notifying a directory also notifies observers of its items,
+     * so this is used to coalesce deferred notifications.
+     */
+    private static Uri getDirectoryUri(Uri uri) {
+	switch (sUriMatcher.match(uri)) {
+	case CATEGORIES:
+	case CATEGORY_ID:
+	    return ToDoCategory.CONTENT_URI;
+	case METADATA:
+	case METADATUM_ID:
+	    return ToDoMetadata.CONTENT_URI;
+	case TODOS:
+	case TODO_ID:
+	case TODO_SEARCH:
+	case TODO_COUNT:
+	case TODO_CATEGORY_COUNT:
+	    return ToDoItem.CONTENT_URI;
+	default:
+	    return uri;
+	}
+    }
+
+    /**
+     * Show the call statistics for each type of URI.
+     * Use <code>adb shell dumpsys activity provider
+     * com.xmission.trevin.android.todo/.ToDoProvider</code>.
+     * If the arguments include "reset", the statistics
+     * are cleared after they are shown.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+	stats.dump(writer);
+	if ((args != null) && Arrays.asList(args).contains("reset")) {
+	    stats.reset();
+	    writer.println("Statistics reset");
+	}
+    }
+
+    /**
+     * Handle the notification suspension and alarm methods.
+     *
+     * @see #METHOD_SUSPEND_NOTIFICATIONS
+     * @see #METHOD_RESUME_NOTIFICATIONS
+     * @see #METHOD_RECOMPUTE_ALARMS
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+	if (DEBUG)
+	    Log.d(TAG, getClass().getSimpleName() + ".call(" + method + ")");
+	if (METHOD_SUSPEND_NOTIFICATIONS.equals(method)) {
+	    synchronized (suspendedNotifications) {
+		suspendCount++;
+	    }
+	    return null;
+	}
+
+	if (METHOD_RESUME_NOTIFICATIONS.equals(method)) {
+	    Uri[] flush;
+	    synchronized (suspendedNotifications) {
+		if (suspendCount <= 0) {
+		    Log.e(TAG, "Notifications resumed without being suspended!");
+		    return null;
+		}
+		if (--suspendCount > 0)
+		    return null;
+		flush = suspendedNotifications.toArray(
+			new Uri[suspendedNotifications.size()]);
+		suspendedNotifications.clear();
+	    }
+	    ContentResolver resolver = getContext().getContentResolver();
+	    for (Uri uri : flush)
+		resolver.notifyChange(uri, null);
+	    return null;
+	}
+
+	if (METHOD_RECOMPUTE_ALARMS.equals(method)) {
+	    SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+	    db.beginTransaction();
+	    try {
+		updateAlarmTimes(db, ALARM_SELECTION, null);
+		db.setTransactionSuccessful();
+	    } finally {
+		db.endTransaction();
+	    }
+	    return null;
+	}
+
+	return super.call(method, arg, extras);
+    }
+
+    /**
+     * Hold back change notifications from the To Do provider
+     * until {@link #resumeNotifications(ContentResolver)} is called.
+     * This should be used around bulk changes such as imports,
+     * and <b>must</b> be paired with a call to resume notifications
+     * in a <code>finally</code> block.
+     */
+    static void suspendNotifications(ContentResolver resolver) {
+	resolver.call(ToDoItem.CONTENT_URI,
+		METHOD_SUSPEND_NOTIFICATIONS, null, null);
+    }
+
+    /**
+     * End a scope opened by {@link #suspendNotifications(ContentResolver)}.
+     * When the last scope closes, observers are notified of
+     * every table that changed in the meantime.
+     */
+    static void resumeNotifications(ContentResolver resolver) {
+	resolver.call(ToDoItem.CONTENT_URI,
+		METHOD_RESUME_NOTIFICATIONS, null, null);
+    }
+
+    /**
+     * Recompute the next alarm time of all To Do items
+     * for the current time zone.
+     */
+    static void recomputeAlarms(ContentResolver resolver) {
+	resolver.call(ToDoItem.CONTENT_URI,
+		METHOD_RECOMPUTE_ALARMS, null, null);
+    }
+
+    /**
+     * Count the To Do items matching a selection
+     * without reading the items themselves.
+     *
+     * @return the number of items
+     */
+    static int countItems(ContentResolver resolver,
+	    String selection, String[] selectionArgs) {
+	Cursor c = resolver.query(ToDoItem.COUNT_URI,
+		new String[] { ToDoItem._COUNT },
+		selection, selectionArgs, null);
+	try {
+	    return c.moveToFirst() ? c.getInt(0) : 0;
+	} finally {
+	    c.close();
+	}
+    }
+
     static {
         sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
         sUriMatcher.addURI(ToDo.AUTHORITY, "categories", CATEGORIES);
@@ -487,6 +1686,10 @@ public class ToDoProvider extends ContentProvider {
         sUriMatcher.addURI(ToDo.AUTHORITY, "misc/#", METADATUM_ID);
         sUriMatcher.addURI(ToDo.AUTHORITY, "todo", TODOS);
         sUriMatcher.addURI(ToDo.AUTHORITY, "todo/#", TODO_ID);
+        sUriMatcher.addURI(ToDo.AUTHORITY, "todo/search", TODO_SEARCH);
+        sUriMatcher.addURI(ToDo.AUTHORITY, "todo/count", TODO_COUNT);
+        sUriMatcher.addURI(ToDo.AUTHORITY, "todo/count/categories",
+        	TODO_CATEGORY_COUNT);
 
         categoryProjectionMap = new HashMap<String,String>();
         categoryProjectionMap.put(ToDoCategory._ID, ToDoCategory._ID);
@@ -512,6 +1715,8 @@ public class ToDoProvider extends ContentProvider {
         	CATEGORY_TABLE_NAME + "." + ToDoCategory.NAME
         	+ " AS " + ToDoItem.CATEGORY_NAME);
         itemProjectionMap.put(ToDoItem.NOTE, ToDoItem.NOTE);
+        itemProjectionMap.put(ToDoItem.HAS_NOTE, "(" + ToDoItem.NOTE
+        	+ " IS NOT NULL) AS " + ToDoItem.HAS_NOTE);
 	itemProjectionMap.put(ToDoItem.ALARM_DAYS_EARLIER,
 		ToDoItem.ALARM_DAYS_EARLIER);
 	itemProjectionMap.put(ToDoItem.ALARM_TIME, ToDoItem.ALARM_TIME);
@@ -536,5 +1741,27 @@ public class ToDoProvider extends ContentProvider {
 		ToDoItem.HIDE_DAYS_EARLIER);
 	itemProjectionMap.put(ToDoItem.NOTIFICATION_TIME,
 		ToDoItem.NOTIFICATION_TIME);
+	itemProjectionMap.put(ToDoItem.VISIBLE_TIME, ToDoItem.VISIBLE_TIME);
+	itemProjectionMap.put(ToDoItem.NEXT_ALARM_TIME,
+		ToDoItem.NEXT_ALARM_TIME);
+	searchProjectionMap = new HashMap<String,String>(itemProjectionMap);
+	searchProjectionMap.put(ToDoItem.SEARCH_SNIPPET,
+		"matches." + ToDoItem.SEARCH_SNIPPET
+		+ " AS " + ToDoItem.SEARCH_SNIPPET);
+	searchProjectionMap.put(ToDoItem.SEARCH_RANK,
+		"matches." + ToDoItem.SEARCH_RANK
+		+ " AS " + ToDoItem.SEARCH_RANK);
+	countProjectionMap = new HashMap<String,String>();
+	countProjectionMap.put(ToDoItem._COUNT,
+		"count(*) AS " + ToDoItem._COUNT);
+	categoryCountProjectionMap = new HashMap<String,String>();
+	categoryCountProjectionMap.put(ToDoItem.CATEGORY_ID,
+		TODO_TABLE_NAME + "." + ToDoItem.CATEGORY_ID
+		+ " AS " + ToDoItem.CATEGORY_ID);
+	categoryCountProjectionMap.put(ToDoItem.CATEGORY_NAME,
+		CATEGORY_TABLE_NAME + "." + ToDoCategory.NAME
+		+ " AS " + ToDoItem.CATEGORY_NAME);
+	categoryCountProjectionMap.put(ToDoItem._COUNT,
+		"count(*) AS " + ToDoItem._COUNT);
     }
 }
@@ -0,0 +1,274 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import static com.xmission.trevin.android.todo.ToDoListActivity.*;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.LoaderManager;
+import android.content.ContentValues;
+import android.content.DialogInterface;
+import android.content.Loader;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+/**
+ * Displays the list of To Do items in a {@link RecyclerView}.
+ * Unlike {@link ToDoListActivity}, which rebinds every visible
+ * row whenever anything in the list changes, this screen compares
+ * each newly loaded list with the one it is showing in the
+ * background and only updates the rows which were added, removed,
+ * moved or changed.
+ * <p>
+ * The list uses the same preferences as {@link ToDoListActivity}
+ * for filtering, sorting and which columns to show.
+ */
+public class ToDoRecyclerActivity extends Activity
+	implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    private static final String TAG = "ToDoRecyclerActivity";
+
+    private static final int DUEDATE_LIST_ID = 2;
+    private static final int DUEDATE_DIALOG_ID = 7;
+
+    /** Shared preferences */
+    private SharedPreferences prefs;
+
+    /** Encryption for private records */
+    private StringEncryption encryptor;
+
+    /** Maps the loaded rows to views */
+    private ToDoRecyclerAdapter itemAdapter;
+
+    /** The dialog for picking any due date */
+    private CalendarDatePickerDialog dueDateDialog = null;
+
+    /** Callbacks for the item snapshot loader */
+    private final LoaderManager.LoaderCallbacks<ToDoItemSnapshotLoader.Snapshot>
+	itemLoaderCallbacks =
+	    new LoaderManager.LoaderCallbacks<ToDoItemSnapshotLoader.Snapshot>() {
+	@Override
+	public Loader<ToDoItemSnapshotLoader.Snapshot> onCreateLoader(
+		int id, Bundle args) {
+	    Log.d(TAG, ".LoaderCallbacks.onCreateLoader");
+	    return new ToDoItemSnapshotLoader(
+		    ToDoRecyclerActivity.this, encryptor);
+	}
+
+	@Override
+	public void onLoadFinished(
+		Loader<ToDoItemSnapshotLoader.Snapshot> loader,
+		ToDoItemSnapshotLoader.Snapshot data) {
+	    Log.d(TAG, ".LoaderCallbacks.onLoadFinished");
+	    if (data != null)
+		itemAdapter.applySnapshot(data);
+	}
+
+	@Override
+	public void onLoaderReset(
+		Loader<ToDoItemSnapshotLoader.Snapshot> loader) {
+	    Log.d(TAG, ".LoaderCallbacks.onLoaderReset");
+	    itemAdapter.clear();
+	}
+    };
+
+    /** Called when the activity is first created. */
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+	super.onCreate(savedInstanceState);
+	Log.d(TAG, ".onCreate");
+
+	encryptor = StringEncryption.holdGlobalEncryption();
+	prefs = getSharedPreferences(TODO_PREFERENCES, MODE_PRIVATE);
+	prefs.registerOnSharedPreferenceChangeListener(this);
+
+	setContentView(R.layout.recycler_list);
+	itemAdapter = new ToDoRecyclerAdapter(this, ToDoItem.CONTENT_URI);
+	RecyclerView listView = (RecyclerView)
+		findViewById(R.id.ItemRecyclerList);
+	listView.setLayoutManager(new LinearLayoutManager(this));
+	listView.setAdapter(itemAdapter);
+
+	getLoaderManager().initLoader(ToDoItem.CONTENT_TYPE.hashCode(),
+		null, itemLoaderCallbacks);
+    }
+
+    /** Called when the activity has lost focus. */
+    @Override
+    public void onPause() {
+	Log.d(TAG, ".onPause");
+	super.onPause();
+	// Don't leave checked-off items waiting in memory
+	ItemWriteQueue.getInstance(this).flushSoon();
+    }
+
+    /** Called when the system is running low on memory */
+    @Override
+    public void onTrimMemory(int level) {
+	Log.d(TAG, ".onTrimMemory(" + level + ")");
+	super.onTrimMemory(level);
+	encryptor.clearPlaintextCache();
+    }
+
+    /** Called when the activity is about to be destroyed */
+    @Override
+    public void onDestroy() {
+	prefs.unregisterOnSharedPreferenceChangeListener(this);
+	StringEncryption.releaseGlobalEncryption(this);
+	super.onDestroy();
+    }
+
+    /** Called when the settings dialog stores a new user setting */
+    @Override
+    public void onSharedPreferenceChanged(
+	    SharedPreferences prefs, String key) {
+	Log.d(TAG, ".onSharedPreferenceChanged(\"" + key + "\")");
+	if (key.equals(TPREF_SHOW_CHECKED) || key.equals(TPREF_SHOW_PRIVATE) ||
+		key.equals(TPREF_SHOW_ENCRYPTED) ||
+		key.equals(TPREF_SELECTED_CATEGORY) ||
+		key.equals(TPREF_SORT_ORDER)) {
+	    // Reload in the background; the rows which were
+	    // filtered in or out will be inserted or removed.
+	    Loader<?> loader = getLoaderManager().getLoader(
+		    ToDoItem.CONTENT_TYPE.hashCode());
+	    if (loader != null)
+		loader.onContentChanged();
+	}
+	else if (key.equals(TPREF_SHOW_CATEGORY) ||
+		key.equals(TPREF_SHOW_DUE_DATE) ||
+		key.equals(TPREF_SHOW_PRIORITY)) {
+	    // The data has not changed, just the widget visibility.
+	    itemAdapter.readDisplayPreferences();
+	    itemAdapter.notifyItemRangeChanged(0, itemAdapter.getItemCount());
+	}
+    }
+
+    /** Called when opening a dialog for the first time */
+    @Override
+    public Dialog onCreateDialog(int id) {
+	switch (id) {
+	case DUEDATE_LIST_ID:
+	    Resources r = getResources();
+	    String[] dueDateOptionFormats =
+		r.getStringArray(R.array.DueDateFormatList);
+	    String[] dueDateListItems =
+		new String[dueDateOptionFormats.length + 2];
+	    Calendar c = Calendar.getInstance();
+	    for (int i = 0; i < dueDateOptionFormats.length; i++) {
+		SimpleDateFormat formatter =
+		    new SimpleDateFormat(dueDateOptionFormats[i],
+			    Locale.getDefault());
+		dueDateListItems[i] = formatter.format(c.getTime());
+		c.add(Calendar.DATE, 1);
+	    }
+	    dueDateListItems[dueDateOptionFormats.length] =
+		r.getString(R.string.DueDateNoDate);
+	    dueDateListItems[dueDateOptionFormats.length + 1] =
+		r.getString(R.string.DueDateOther);
+	    AlertDialog.Builder builder = new AlertDialog.Builder(this);
+	    builder.setItems(dueDateListItems,
+		    new DueDateListSelectionListener());
+	    return builder.create();
+
+	case DUEDATE_DIALOG_ID:
+	    dueDateDialog = new CalendarDatePickerDialog(this,
+		    getText(R.string.DatePickerTitleDueDate),
+		    new CalendarDatePickerDialog.OnDateSetListener() {
+		@Override
+		public void onDateSet(CalendarDatePicker dp,
+			int year, int month, int day) {
+		    Log.d(TAG, "dueDateDialog.onDateSet(" + year + ","
+			    + month + "," + day + ")");
+		    Calendar c = new GregorianCalendar(year, month, day);
+		    c.set(Calendar.HOUR_OF_DAY, 23);
+		    c.set(Calendar.MINUTE, 59);
+		    c.set(Calendar.SECOND, 59);
+		    ContentValues values = new ContentValues();
+		    values.put(ToDoItem.DUE_TIME, c.getTimeInMillis());
+		    values.put(ToDoItem.MOD_TIME, System.currentTimeMillis());
+		    itemAdapter.updateSelectedItem(values);
+		}
+	    });
+	    return dueDateDialog;
+
+	default:
+	    Log.d(TAG, ".onCreateDialog(" + id + "): undefined dialog ID");
+	    return null;
+	}
+    }
+
+    /** Called each time a dialog is shown */
+    @Override
+    public void onPrepareDialog(int id, Dialog dialog) {
+	if (id == DUEDATE_DIALOG_ID) {
+	    // The list already has the due date, so don't query for it
+	    Long due = itemAdapter.getSelectedDueTime();
+	    Calendar c = Calendar.getInstance();
+	    if (due != null)
+		c.setTimeInMillis(due);
+	    dueDateDialog.setDate(c.get(Calendar.YEAR),
+		    c.get(Calendar.MONTH), c.get(Calendar.DATE));
+	}
+    }
+
+    class DueDateListSelectionListener
+		implements DialogInterface.OnClickListener {
+	@Override
+	public void onClick(DialogInterface dialog, int which) {
+	    Log.d(TAG, "DueDateListSelectionListener.onClick(" + which + ")");
+	    ContentValues values = new ContentValues();
+	    switch (which) {
+	    default:
+		Calendar c = Calendar.getInstance();
+		c.add(Calendar.DATE, which);
+		c.set(Calendar.HOUR_OF_DAY, 23);
+		c.set(Calendar.MINUTE, 59);
+		c.set(Calendar.SECOND, 59);
+		values.put(ToDoItem.DUE_TIME, c.getTimeInMillis());
+		break;
+
+	    case 8:	// No date
+		values.putNull(ToDoItem.DUE_TIME);
+		break;
+
+	    case 9:	// Other
+		showDialog(DUEDATE_DIALOG_ID);
+		return;
+	    }
+	    values.put(ToDoItem.MOD_TIME, System.currentTimeMillis());
+	    // Written in the background, like checking off an item
+	    itemAdapter.updateSelectedItem(values);
+	}
+    }
+
+}
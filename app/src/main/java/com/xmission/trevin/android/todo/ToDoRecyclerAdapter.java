@@ -0,0 +1,232 @@
+/*
+ * $Id$
+ * Copyright © 2026
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * $Log$
+ */
+package com.xmission.trevin.android.todo;
+
+import java.util.*;
+
+import com.xmission.trevin.android.todo.ToDo.ToDoItem;
+
+import android.app.Activity;
+import android.content.*;
+import android.net.Uri;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.*;
+import android.widget.*;
+
+/**
+ * An adapter to show a list of {@link ToDoItemRow}s in the list_item
+ * layout.  The list is replaced by {@link #applySnapshot}, which only
+ * tells the {@link RecyclerView} about the rows that actually changed.
+ */
+class ToDoRecyclerAdapter
+    extends RecyclerView.Adapter<ToDoRecyclerAdapter.ViewHolder> {
+
+    private static final String TAG = "ToDoRecyclerAdapter";
+
+    private final Activity callingActivity;
+    private final LayoutInflater inflater;
+    private final Uri listUri;
+
+    /** Changes made in the list which have not been written yet */
+    private final ItemWriteQueue writeQueue;
+
+    /** Shows each item in its list_item views */
+    private final ToDoItemBinder binder;
+
+    /** The rows currently shown */
+    private List<ToDoItemRow> rows = Collections.emptyList();
+
+    /** The item whose due date is currently selected */
+    private ToDoItemRow selectedRow = null;
+
+    ToDoRecyclerAdapter(Activity activity, Uri uri) {
+	callingActivity = activity;
+	inflater = LayoutInflater.from(activity);
+	listUri = uri;
+	writeQueue = ItemWriteQueue.getInstance(activity);
+	binder = new ToDoItemBinder(activity);
+	setHasStableIds(true);
+    }
+
+    /** @see ToDoItemBinder#readDisplayPreferences */
+    void readDisplayPreferences() {
+	binder.readDisplayPreferences();
+    }
+
+    /**
+     * Show a newly loaded list.  If the snapshot was compared with
+     * the list we are showing, only the differences are dispatched;
+     * otherwise the whole list is rebound.
+     */
+    void applySnapshot(ToDoItemSnapshotLoader.Snapshot snapshot) {
+	if (snapshot.rows == rows)
+	    return;
+	List<ToDoItemRow> oldRows = rows;
+	rows = snapshot.rows;
+	writeQueue.onReloaded();
+	if ((snapshot.diff != null) && (snapshot.base == oldRows)) {
+	    snapshot.diff.dispatchUpdatesTo(this);
+	} else {
+	    Log.d(TAG, ".applySnapshot: replacing the whole list");
+	    notifyDataSetChanged();
+	}
+    }
+
+    /**
+     * @return the due date of the item whose due date was last
+     * selected, including any change which has not been written yet,
+     * or {@code null} if it has none.
+     */
+    Long getSelectedDueTime() {
+	ContentValues edits = writeQueue.getPendingValues(
+		selectedRow.id, selectedRow.modTime);
+	if ((edits != null) && edits.containsKey(ToDoItem.DUE_TIME))
+	    return edits.getAsLong(ToDoItem.DUE_TIME);
+	return selectedRow.hasDueDate ? selectedRow.dueTime : null;
+    }
+
+    /**
+     * Change the item whose due date was last selected.  The change
+     * is written in the background and shown in its row right away.
+     */
+    void updateSelectedItem(ContentValues values) {
+	Log.d(TAG, ".updateSelectedItem(" + selectedRow.id + ")");
+	writeQueue.update(selectedRow.id, values);
+	for (int position = 0; position < rows.size(); position++) {
+	    if (rows.get(position).id == selectedRow.id) {
+		notifyItemChanged(position);
+		break;
+	    }
+	}
+    }
+
+    /** Clear the list when the loader is reset */
+    void clear() {
+	rows = Collections.emptyList();
+	notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+	return rows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+	return rows.get(position).id;
+    }
+
+    /**
+     * The widgets of a list item and the item bound to them.
+     * The listeners read the item from here, so they are created
+     * once per view and follow it as it is rebound to different rows.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder
+	implements CompoundButton.OnCheckedChangeListener,
+		   View.OnClickListener, View.OnLongClickListener {
+	final ToDoItemBinder.Views views;
+
+	/** The item currently bound to this view */
+	ToDoItemRow row;
+
+	ViewHolder(View view) {
+	    super(view);
+	    views = new ToDoItemBinder.Views(view);
+	    views.checkedListener = this;
+
+	    // Long-clicking anywhere brings up the details dialog,
+	    // as does clicking on the alarm or repeat icon.  Clicking
+	    // the note opens the note, and the due date changes it.
+	    view.setOnLongClickListener(this);
+	    views.editDescription.setOnLongClickListener(this);
+	    views.noteImage.setOnClickListener(this);
+	    views.alarmImage.setOnClickListener(this);
+	    views.repeatImage.setOnClickListener(this);
+	    views.dueDateText.setOnClickListener(this);
+	}
+
+	/** @return the URI of the item currently bound to this view */
+	Uri getItemUri() {
+	    return ContentUris.withAppendedId(listUri, row.id);
+	}
+
+	/** Called when the user checks off (or back on) a to-do item */
+	@Override
+	public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+	    Log.d(TAG, ".onCheckedChanged(" + getItemUri()
+		    + "," + isChecked + ")");
+	    // The row is shared with the loader, so work from a copy
+	    RepeatSettings repeat = (isChecked && (row.repeat != null))
+		? row.repeat.clone() : null;
+	    // If a repeating item was reset to its next due date,
+	    // rebind the row now so that it shows it right away.
+	    if (binder.writeChecked(row.id, isChecked, repeat)
+		    && (getAdapterPosition() != RecyclerView.NO_POSITION))
+		notifyItemChanged(getAdapterPosition());
+	}
+
+	@Override
+	public void onClick(View v) {
+	    if (v == views.dueDateText) {
+		Log.d(TAG, "ToDoTextDueDate.onClick(" + getItemUri() + ")");
+		selectedRow = row;
+		callingActivity.showDialog(ToDoDetailsActivity.DUEDATE_LIST_ID);
+		return;
+	    }
+	    Intent intent;
+	    if (v == views.noteImage) {
+		Log.d(TAG, "ToDoNoteImage.onClick");
+		intent = new Intent(v.getContext(), ToDoNoteActivity.class);
+	    } else {
+		Log.d(TAG, ".onClick(" + getItemUri() + ")");
+		intent = new Intent(v.getContext(), ToDoDetailsActivity.class);
+	    }
+	    intent.setData(getItemUri());
+	    v.getContext().startActivity(intent);
+	}
+
+	@Override
+	public boolean onLongClick(View v) {
+	    Log.d(TAG, ".onLongClick(" + getItemUri() + ")");
+	    Intent intent = new Intent(v.getContext(),
+		    ToDoDetailsActivity.class);
+	    intent.setData(getItemUri());
+	    v.getContext().startActivity(intent);
+	    return true;
+	}
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+	return new ViewHolder(
+		inflater.inflate(R.layout.list_item, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+	ToDoItemRow row = rows.get(position);
+	holder.row = row;
+	binder.bind(holder.views, row.id, row.modTime, row.checked,
+		row.priority, row.description, row.hasNote, row.hasAlarm,
+		row.repeating, row.hasDueDate, row.dueTime, row.categoryName);
+    }
+
+}
@@ -37,6 +37,7 @@ import java.util.regex.*;
 import android.app.IntentService;
 import android.content.*;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Binder;
 import android.os.IBinder;
 import android.util.Log;
@@ -93,6 +94,9 @@ public class XMLExporterService extends IntentService
     /** Whether private records should be exported */
     private boolean exportPrivate = true;
 
+    /** The number of items to read from the database at a time */
+    private static final int EXPORT_PAGE_SIZE = 256;
+
     /** The current number of entries exported */
     private int exportCount = 0;
 
@@ -268,6 +272,9 @@ public class XMLExporterService extends IntentService
 		if (StringEncryption.METADATA_PASSWORD_HASH[0].equals(name) &&
 			!exportPrivate)
 		    continue;
+		// An unfinished password change doesn't belong in a backup
+		if (PasswordChangeJournal.METADATA_JOURNAL[0].equals(name))
+		    continue;
 		int ival = c.getColumnIndex(ToDoMetadata.VALUE);
 		out.print(String.format("\t<item id=\"%d\" name=\"%s\"",
 			c.getLong(c.getColumnIndex(ToDoMetadata._ID)),
@@ -338,15 +345,35 @@ public class XMLExporterService extends IntentService
 		ToDoItem.HIDE_DAYS_EARLIER,
 		ToDoItem.NOTIFICATION_TIME,
 	};
-	Cursor c = getContentResolver().query(ToDoItem.CONTENT_URI,
-		PROJECTION, null, null,
-		ToDoProvider.TODO_TABLE_NAME + "." + ToDoItem._ID);
-	totalCount = c.getCount();
+	// Count the same rows the loop below writes: a NULL privacy
+	// reads as 0, and only positive values are private.
+	totalCount = ToDoProvider.countItems(getContentResolver(),
+		exportPrivate ? null
+			: ("ifnull(" + ToDoItem.PRIVATE + ", 0) <= 0"), null);
 	exportCount = 0;
 
+	// Read the items a page at a time to limit the size of the cursor
+	Uri pageUri = ToDoItem.CONTENT_URI.buildUpon().appendQueryParameter(
+		ToDoItem.QUERY_LIMIT, Integer.toString(EXPORT_PAGE_SIZE)).build();
+	final String ORDER = ToDoProvider.TODO_TABLE_NAME + "." + ToDoItem._ID;
+	Cursor c = getContentResolver().query(pageUri,
+		PROJECTION, null, null, ORDER);
 	try {
 	    out.println("    <" + ITEMS_TAG + ">");
-	    while (c.moveToNext()) {
+	    while (true) {
+		if (!c.moveToNext()) {
+		    if (c.getCount() < EXPORT_PAGE_SIZE)
+			break;
+		    c.moveToLast();
+		    String lastKey = c.getString(
+			    c.getColumnIndex(ToDoItem.PAGE_KEY));
+		    c.close();
+		    c = getContentResolver().query(pageUri.buildUpon()
+			    .appendQueryParameter(ToDoItem.QUERY_AFTER, lastKey)
+			    .build(), PROJECTION, null, null, ORDER);
+		    if (!c.moveToNext())
+			break;
+		}
 		int privacy = c.getInt(c.getColumnIndex(ToDoItem.PRIVATE));
 		if (!exportPrivate && (privacy > 0))
 		    continue;
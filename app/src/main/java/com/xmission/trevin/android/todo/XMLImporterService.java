@@ -46,6 +46,7 @@ import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -58,15 +59,18 @@ import com.xmission.trevin.android.todo.ToDo.ToDoCategory;
 import com.xmission.trevin.android.todo.ToDo.ToDoItem;
 
 import android.app.IntentService;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.IBinder;
+import android.os.RemoteException;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -315,8 +319,9 @@ public class XMLImporterService extends IntentService implements
 	    return;
 	}
 
+	// Hold back change notifications until after importing
+	ToDoProvider.suspendNotifications(getContentResolver());
 	try {
-	    // To do: Disable the DB content change listener until after importing
 	    // Start parsing
 	    currentMode = OpMode.PARSING;
 	    DocumentBuilder builder =
@@ -428,8 +433,9 @@ public class XMLImporterService extends IntentService implements
 	    Log.e(LOG_TAG, "XML Import Error at item " + importCount
 		    + "/" + totalCount, x);
 	    Toast.makeText(this, x.getMessage(), Toast.LENGTH_LONG);
+	} finally {
+	    ToDoProvider.resumeNotifications(getContentResolver());
 	}
-	// To do: re-enable the DB content change listener
     }
 
     /**
@@ -768,6 +774,9 @@ public class XMLImporterService extends IntentService implements
 
     private static enum Operation { INSERT, UPDATE, SKIP };
 
+    /** The number of To Do items to write to the database in one transaction */
+    private static final int IMPORT_BATCH_SIZE = 100;
+
     private static final Pattern DATE_PATTERN =
 	Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}Z");
     private static final Pattern NUMBER_PATTERN =
@@ -792,13 +801,110 @@ public class XMLImporterService extends IntentService implements
 	return (s == null) || (s.length() == 0);
     }
 
+    /** @return the privacy level of a To Do item element */
+    private int getPrivacy(Element itemE) {
+	String value = itemE.getAttribute("private");
+	int privacy = 0;
+	if (Boolean.parseBoolean(value)) {
+	    value = itemE.getAttribute("encryption");
+	    if (!isEmpty(value))
+		privacy = Integer.parseInt(value);
+	    else
+		privacy = 1;
+	}
+	return privacy;
+    }
+
+    /** The plain and re-encrypted text of a private To Do item */
+    private static class PrivateText {
+	String description;
+	String note;
+	/** Encrypted with the new password, or null if there is none */
+	byte[] encryptedDescription;
+	byte[] encryptedNote;
+    }
+
+    /**
+     * Decrypt the private To Do items from the XML file with the
+     * password they were exported with, and encrypt them with the
+     * current password if there is one.  The XML elements are read
+     * on this thread while the encryption is done by a pool of
+     * worker threads.
+     *
+     * @return the text of each item, in the same order as
+     * {@code items}; null for items which are not private.
+     */
+    private PrivateText[] convertPrivateText(List<Element> items,
+	    final StringEncryption oldCrypt, final StringEncryption newCrypt)
+		throws GeneralSecurityException, SAXException {
+	PrivateText[] texts = new PrivateText[items.size()];
+	final boolean reencrypt = newCrypt.hasKey();
+	CryptoWorkQueue<PrivateText> workers =
+	    new CryptoWorkQueue<PrivateText>();
+	try {
+	    for (int i = 0; i < texts.length; i++) {
+		Element itemE = items.get(i);
+		final int privacy = getPrivacy(itemE);
+		if (privacy <= 0)
+		    continue;
+		Map<String,Element> itemMap = mapChildren(itemE);
+		final PrivateText text = new PrivateText();
+		texts[i] = text;
+		text.description = getText(itemMap.get("description"));
+		text.note = (itemMap.containsKey("note")) ?
+			getText(itemMap.get("note")) : null;
+		final boolean hasNote = itemMap.containsKey("note");
+		if ((privacy < 2) && !reencrypt)
+		    continue;
+		final byte[] encryptedDescription;
+		final byte[] encryptedNote;
+		if (privacy >= 2) {
+		    // Decrypt first — Base64 in XML
+		    encryptedDescription = decodeBase64(text.description);
+		    encryptedNote = (text.note == null) ? null
+			    : decodeBase64(text.note);
+		} else {
+		    encryptedDescription = null;
+		    encryptedNote = null;
+		}
+		boolean full = workers.add(new Callable<PrivateText>() {
+		    @Override
+		    public PrivateText call() throws GeneralSecurityException {
+			if (privacy >= 2) {
+			    text.description =
+				oldCrypt.decrypt(encryptedDescription);
+			    if (encryptedNote != null)
+				text.note = oldCrypt.decrypt(encryptedNote);
+			}
+			// Re-encrypt if possible — binary in DB
+			if (reencrypt) {
+			    text.encryptedDescription =
+				newCrypt.encrypt(text.description);
+			    if (hasNote)
+				text.encryptedNote = newCrypt.encrypt(text.note);
+			}
+			return text;
+		    }
+		});
+		if (full)
+		    workers.take();
+	    }
+	    while (!workers.isEmpty())
+		workers.take();
+	} finally {
+	    workers.shutdown();
+	}
+	return texts;
+    }
+
     /**
      * Merge the To Do items from the XML file
      * with the Android database.
      */
     void mergeToDos(ImportType importType, List<Element> items,
 	    boolean importPrivate, StringEncryption oldCrypt)
-		throws GeneralSecurityException, ParseException, SAXException {
+		throws GeneralSecurityException, ParseException, SAXException,
+		RemoteException, OperationApplicationException {
 	Log.d(LOG_TAG, ".mergeToDos(" + importType + ")");
 	ContentResolver resolver = getContentResolver();
 	StringEncryption newCrypt = StringEncryption.holdGlobalEncryption();
@@ -829,7 +935,16 @@ public class XMLImporterService extends IntentService implements
 
 	    ContentValues values = new ContentValues();
 	    ContentValues existingRecord = new ContentValues();
+	    // Item changes waiting to be written, and the ID's they use
+	    ArrayList<ContentProviderOperation> batch =
+		new ArrayList<ContentProviderOperation>(IMPORT_BATCH_SIZE);
+	    Set<Long> batchIDs = new HashSet<Long>();
+	    // Decrypt and re-encrypt the private items up front
+	    PrivateText[] privateTexts = importPrivate
+		? convertPrivateText(items, oldCrypt, newCrypt) : null;
+	    int itemIndex = -1;
 	    for (Element itemE : items) {
+		itemIndex++;
 		Map<String,Element> itemMap = mapChildren(itemE);
 		values.clear();
 		String value = itemE.getAttribute("id");
@@ -846,16 +961,7 @@ public class XMLImporterService extends IntentService implements
 		value = itemE.getAttribute("priority");
 		values.put(ToDoItem.PRIORITY, Integer.parseInt(value));
 
-		value = itemE.getAttribute("private");
-		int privacy = 0;
-		if (Boolean.parseBoolean(value)) {
-		    value = itemE.getAttribute("encryption");
-		    if (!isEmpty(value))
-			privacy = Integer.parseInt(value);
-		    else
-			privacy = 1;
-		}
-
+		int privacy = getPrivacy(itemE);
 		String description = getText(itemMap.get("description"));
 		String note = (itemMap.containsKey("note")) ?
 			getText(itemMap.get("note")) : null;
@@ -864,25 +970,14 @@ public class XMLImporterService extends IntentService implements
 			importCount++;
 			continue;
 		    }
-		    byte[] encryptedDescription;
-		    byte[] encryptedNote;
-		    if (privacy >= 2) {
-			// Decrypt first — Base64 in XML
-			encryptedDescription = decodeBase64(description);
-			description = oldCrypt.decrypt(encryptedDescription);
-			if (note != null) {
-			    encryptedNote = decodeBase64(note);
-			    note = oldCrypt.decrypt(encryptedNote);
-			}
-		    }
-		    // Re-encrypt if possible — binary in DB
-		    if (newCrypt.hasKey()) {
-			encryptedDescription = newCrypt.encrypt(description);
-			values.put(ToDoItem.DESCRIPTION, encryptedDescription);
-			if (itemMap.containsKey("note")) {
-			    encryptedNote = newCrypt.encrypt(note);
-			    values.put(ToDoItem.NOTE, encryptedNote);
-			}
+		    PrivateText text = privateTexts[itemIndex];
+		    description = text.description;
+		    note = text.note;
+		    if (text.encryptedDescription != null) {
+			values.put(ToDoItem.DESCRIPTION,
+				text.encryptedDescription);
+			if (itemMap.containsKey("note"))
+			    values.put(ToDoItem.NOTE, text.encryptedNote);
 			privacy = 2;
 		    } else {
 			privacy = 1;
@@ -971,6 +1066,9 @@ public class XMLImporterService extends IntentService implements
 		}
 
 		if (importType != ImportType.CLEAN) {
+		    // The existing item may still be waiting in the batch
+		    if (batchIDs.contains(values.getAsLong(ToDoItem._ID)))
+			flushBatch(resolver, batch, batchIDs);
 		    existingRecord.clear();
 		    c = resolver.query(ContentUris.withAppendedId(
 			    ToDoItem.CONTENT_URI, values.getAsLong(ToDoItem._ID)),
@@ -1090,7 +1188,10 @@ public class XMLImporterService extends IntentService implements
 					: values.getAsString(ToDoItem.DESCRIPTION))
 				+ "\"");
 		    }
-		    resolver.insert(ToDoItem.CONTENT_URI, values);
+		    batch.add(ContentProviderOperation.newInsert(
+			    ToDoItem.CONTENT_URI).withValues(values)
+			    .withYieldAllowed(batch.isEmpty()).build());
+		    batchIDs.add(values.getAsLong(ToDoItem._ID));
 		    break;
 
 		case UPDATE:
@@ -1105,18 +1206,37 @@ public class XMLImporterService extends IntentService implements
 					: values.getAsString(ToDoItem.DESCRIPTION))
 				+ "\"");
 		    }
-		    resolver.update(ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
-			    values.getAsLong(ToDoItem._ID)), values, null, null);
+		    batch.add(ContentProviderOperation.newUpdate(
+			    ContentUris.withAppendedId(ToDoItem.CONTENT_URI,
+				    values.getAsLong(ToDoItem._ID)))
+			    .withValues(values).withYieldAllowed(batch.isEmpty()).build());
+		    batchIDs.add(values.getAsLong(ToDoItem._ID));
 		    break;
 		}
+		if (batch.size() >= IMPORT_BATCH_SIZE)
+		    flushBatch(resolver, batch, batchIDs);
 		importCount++;
 	    }
+	    flushBatch(resolver, batch, batchIDs);
 	}
 	finally {
 	    StringEncryption.releaseGlobalEncryption();
 	}
     }
 
+    /**
+     * Write a batch of To Do item changes to the database
+     * in a single transaction, then clear the batch.
+     */
+    private void flushBatch(ContentResolver resolver,
+	    ArrayList<ContentProviderOperation> batch, Set<Long> batchIDs)
+		throws RemoteException, OperationApplicationException {
+	if (!batch.isEmpty())
+	    resolver.applyBatch(ToDo.AUTHORITY, batch);
+	batch.clear();
+	batchIDs.clear();
+    }
+
     /**
      * Called when the service is created.
      */
@@ -0,0 +1,127 @@
+package com.xmission.trevin.android.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the table-driven {@link AESEngine} produces exactly the
+ * same output as {@link AESLightEngine} for random keys and blocks of
+ * every key size, in both directions, and that both match the
+ * FIPS-197 example vectors.
+ */
+public class AESEngineTest
+{
+    private static final int[] KEY_SIZES = { 16, 24, 32 };
+
+    /** Number of random keys tried for each key size */
+    private static final int KEYS = 50;
+
+    /** Number of random blocks processed with each key */
+    private static final int BLOCKS = 200;
+
+    /** FIPS-197 appendix C: the same plain text under three keys */
+    private static final String FIPS_PLAIN = "00112233445566778899aabbccddeeff";
+
+    private static final String[][] FIPS_VECTORS = {
+        { "000102030405060708090a0b0c0d0e0f",
+          "69c4e0d86a7b0430d8cdb78070b4c55a" },
+        { "000102030405060708090a0b0c0d0e0f1011121314151617",
+          "dda97ca4864cdfe06eaf70a0ec0d7191" },
+        { "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f",
+          "8ea2b7ca516745bfeafc49904b496089" },
+    };
+
+    private static byte[] hex(String s)
+    {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+        {
+            b[i] = (byte)Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+
+    private static byte[] process(BlockCipher cipher, boolean forEncryption,
+        byte[] key, byte[] in)
+    {
+        cipher.init(forEncryption, new KeyParameter(key));
+        byte[] out = new byte[in.length];
+        for (int off = 0; off < in.length; off += cipher.getBlockSize())
+        {
+            assertEquals(16, cipher.processBlock(in, off, out, off));
+        }
+        return out;
+    }
+
+    private void compareEngines(boolean forEncryption)
+    {
+        Random random = new Random(forEncryption ? 197L : 198L);
+        for (int keySize : KEY_SIZES)
+        {
+            for (int k = 0; k < KEYS; k++)
+            {
+                byte[] key = new byte[keySize];
+                random.nextBytes(key);
+                byte[] in = new byte[16 * BLOCKS];
+                random.nextBytes(in);
+                byte[] expected = process(new AESLightEngine(),
+                    forEncryption, key, in);
+                byte[] actual = process(new AESEngine(),
+                    forEncryption, key, in);
+                assertArrayEquals((forEncryption ? "Encrypting" : "Decrypting")
+                    + " with a " + (8 * keySize) + "-bit key",
+                    expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testEncryptMatchesLightEngine()
+    {
+        compareEngines(true);
+    }
+
+    @Test
+    public void testDecryptMatchesLightEngine()
+    {
+        compareEngines(false);
+    }
+
+    /** A re-initialized engine must not keep anything of the old key */
+    @Test
+    public void testReinitialize()
+    {
+        Random random = new Random(11L);
+        AESEngine engine = new AESEngine();
+        for (int keySize : KEY_SIZES)
+        {
+            byte[] key = new byte[keySize];
+            random.nextBytes(key);
+            byte[] plain = new byte[16];
+            random.nextBytes(plain);
+            byte[] cipherText = process(engine, true, key, plain);
+            assertArrayEquals(process(new AESLightEngine(), true, key, plain),
+                cipherText);
+            assertArrayEquals(plain, process(engine, false, key, cipherText));
+        }
+    }
+
+    @Test
+    public void testFipsVectors()
+    {
+        byte[] plain = hex(FIPS_PLAIN);
+        for (String[] vector : FIPS_VECTORS)
+        {
+            byte[] key = hex(vector[0]);
+            byte[] cipherText = hex(vector[1]);
+            assertArrayEquals(cipherText, process(new AESEngine(), true, key, plain));
+            assertArrayEquals(cipherText, process(new AESLightEngine(), true, key, plain));
+            assertArrayEquals(plain, process(new AESEngine(), false, key, cipherText));
+            assertArrayEquals(plain, process(new AESLightEngine(), false, key, cipherText));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.xmission.trevin.android.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.junit.Test;
+
+/**
+ * Checks the PBKDF2-HMAC-SHA256 keys from {@link PKCS5S2ParametersGenerator}
+ * against published test vectors and against the JDK's own
+ * PBKDF2WithHmacSHA256 implementation.
+ */
+public class PKCS5S2ParametersGeneratorTest
+{
+    /**
+     * Password, salt, iteration count and expected key.
+     * The first two are from RFC 7914 section 11; the rest are the
+     * RFC 6070 inputs with HMAC-SHA256 in place of HMAC-SHA1.
+     */
+    private static final String[][] VECTORS = {
+        { "passwd", "salt", "1",
+          "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+          + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783" },
+        { "Password", "NaCl", "80000",
+          "4ddcd8f60b98be21830cee5ef22701f9641a4418d04c0414aeff08876b34ab56"
+          + "a1d425a1225833549adb841b51c9b3176a272bdebba1d078478f62b397f33c8d" },
+        { "password", "salt", "1",
+          "120fb6cffcf8b32c43e7225256c4f837a86548c92ccc35480805987cb70be17b" },
+        { "password", "salt", "2",
+          "ae4d0c95af6b46d32d0adff928f06dd02a303f8ef3c251dfd6e2d85a95474c43" },
+        { "password", "salt", "4096",
+          "c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a" },
+        { "passwordPASSWORDpassword", "saltSALTsaltSALTsaltSALTsaltSALTsalt", "4096",
+          "348c89dbcbd32b2f32d814b8116e84cf2b17347ebc1800181c4e2a1fb8dd53e1"
+          + "c635518c7dac47e9" },
+    };
+
+    /** Iteration counts tried against the JDK */
+    private static final int[] ITERATIONS = { 1, 2, 3, 100, 1000, 4096 };
+
+    /** Key lengths in bits tried against the JDK, some spanning several blocks */
+    private static final int[] KEY_BITS = { 128, 160, 256, 384, 512, 800 };
+
+    private static byte[] hex(String s)
+    {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+        {
+            b[i] = (byte)Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+
+    private static byte[] derive(char[] password, byte[] salt,
+        int iterations, int keyBits)
+    {
+        PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator();
+        generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password),
+            salt, iterations);
+        return generator.generateDerivedParameters(keyBits).getKey();
+    }
+
+    @Test
+    public void testPublishedVectors()
+    {
+        for (String[] vector : VECTORS)
+        {
+            byte[] expected = hex(vector[3]);
+            assertArrayEquals(vector[0] + " / " + vector[1] + " / " + vector[2],
+                expected, derive(vector[0].toCharArray(),
+                    vector[1].getBytes(PBEParametersGenerator.UTF8),
+                    Integer.parseInt(vector[2]), 8 * expected.length));
+        }
+    }
+
+    @Test
+    public void testMatchesJdk()
+        throws Exception
+    {
+        SecretKeyFactory factory =
+            SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        Random random = new Random(2898L);
+        for (int iterations : ITERATIONS)
+        {
+            for (int keyBits : KEY_BITS)
+            {
+                char[] password = new char[1 + random.nextInt(40)];
+                for (int i = 0; i < password.length; i++)
+                {
+                    password[i] = (char)(' ' + random.nextInt(95));
+                }
+                byte[] salt = new byte[8 + random.nextInt(25)];
+                random.nextBytes(salt);
+                byte[] expected = factory.generateSecret(new PBEKeySpec(
+                    password, salt, iterations, keyBits)).getEncoded();
+                assertArrayEquals(iterations + " iterations, "
+                    + keyBits + "-bit key", expected,
+                    derive(password, salt, iterations, keyBits));
+            }
+        }
+    }
+
+    /** Re-initializing a generator must not carry anything over from its last key */
+    @Test
+    public void testReuse()
+        throws Exception
+    {
+        SecretKeyFactory factory =
+            SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator();
+        Random random = new Random(8018L);
+        for (int i = 0; i < 20; i++)
+        {
+            char[] password = Long.toHexString(random.nextLong()).toCharArray();
+            byte[] salt = new byte[16];
+            random.nextBytes(salt);
+            int iterations = 1 + random.nextInt(500);
+            generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(
+                password), salt, iterations);
+            assertArrayEquals(factory.generateSecret(new PBEKeySpec(
+                    password, salt, iterations, 256)).getEncoded(),
+                generator.generateDerivedParameters(256).getKey());
+        }
+    }
+}